@@ -24,9 +24,11 @@ import com.jp.jcanvas.widget.ColorPicker;
 import com.jp.jpainter.brush.BrushTag01;
 import com.jp.jpainter.brush.EraserTag01;
 import com.jp.jpainter.utils.SDUtil;
+import com.jp.jpainter.utils.ToastUtil;
 import com.jp.jpainter.widgets.ToolDrawer;
 import com.jp.jpainter.widgets.ToolMenu;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -51,6 +53,8 @@ public class PainterActivity extends AppCompatActivity {
     private ObjectAnimator mScaleOut;
     private ObjectAnimator mScaleIn;
 
+    private boolean mSaving;
+
     private class PainterHandler extends Handler {
         PainterHandler() {
             super();
@@ -131,6 +135,12 @@ public class PainterActivity extends AppCompatActivity {
 
             @Override
             public void onSaveClicked() {
+                if (mSaving) {
+                    ToastUtil.show(PainterActivity.this, "正在保存，请稍候");
+                    return;
+                }
+
+                // 导出前确保图片目录存在
                 if (!SDUtil.initBitmapDir()) {
                     new AlertDialog.Builder(PainterActivity.this)
                             .setTitle("保存失败0")
@@ -142,22 +152,53 @@ public class PainterActivity extends AppCompatActivity {
                 DateFormat formatter
                         = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss", Locale.getDefault());
                 String fileName = formatter.format(new Date()) + ".png";
-
-                if (SDUtil.saveBitmap(fileName, painter.getBitmap())) {
-                    new AlertDialog.Builder(PainterActivity.this)
-                            .setTitle("保存成功")
-                            .setPositiveButton("new", (dialog, which) -> {
-                                painter.resetCanvas();
-                            })
-                            .setNegativeButton("ok", null)
-                            .show();
-
-                } else {
+                File file = SDUtil.getBitmapFile(fileName);
+                if (file.exists()) {
                     new AlertDialog.Builder(PainterActivity.this)
-                            .setTitle("保存失败1")
+                            .setTitle("保存失败2")
+                            .setMessage("文件已存在：" + fileName)
                             .setPositiveButton("ok", null)
                             .show();
+                    return;
                 }
+
+                // 编码在后台进行，保存期间可以继续绘制
+                mSaving = true;
+                painter.exportPng(file, new CanvasInterface.OnExportListener() {
+                    @Override
+                    public void onExportProgress(int percent) {
+                        ToastUtil.show(PainterActivity.this, "保存中 " + percent + "%");
+                    }
+
+                    @Override
+                    public void onExportComplete(File file) {
+                        mSaving = false;
+                        ToastUtil.cancel();
+                        if (isFinishing()) {
+                            return;
+                        }
+                        new AlertDialog.Builder(PainterActivity.this)
+                                .setTitle("保存成功")
+                                .setPositiveButton("new", (dialog, which) -> {
+                                    painter.resetCanvas();
+                                })
+                                .setNegativeButton("ok", null)
+                                .show();
+                    }
+
+                    @Override
+                    public void onExportFailed(File file, Exception e) {
+                        mSaving = false;
+                        ToastUtil.cancel();
+                        if (isFinishing()) {
+                            return;
+                        }
+                        new AlertDialog.Builder(PainterActivity.this)
+                                .setTitle("保存失败1")
+                                .setPositiveButton("ok", null)
+                                .show();
+                    }
+                });
             }
 
             @Override
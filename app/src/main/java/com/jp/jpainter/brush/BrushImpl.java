@@ -49,7 +49,7 @@ public class BrushImpl extends BaseBrush {
 //        mPaint.setStyle(Paint.Style.FILL);
         mPaint.setStyle(Paint.Style.STROKE);
         mPaint.setStrokeWidth(16f);
-        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER));
+        setBlendMode(PorterDuff.Mode.SRC_OVER);
         mPaint.setColor(Color.argb(255, 192, 192, 192));
 //        mPaint.setStrokeJoin(Paint.Join.ROUND);
 //        mPaint.setStrokeCap(Paint.Cap.ROUND);
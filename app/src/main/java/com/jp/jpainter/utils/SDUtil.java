@@ -1,11 +1,8 @@
 package com.jp.jpainter.utils;
 
-import android.graphics.Bitmap;
 import android.os.Environment;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 
 /**
  *
@@ -94,26 +91,13 @@ public class SDUtil {
         return new File(PIC_DIR);
     }
 
-    public static boolean saveBitmap(String fileName, Bitmap bitmap) {
-        File file = new File(getBitmapDir(), fileName);
-        if (file.exists()) {
-            return false;
-        }
-
-        FileOutputStream out;
-        try {
-            out = new FileOutputStream(file);
-
-            if (bitmap.compress(Bitmap.CompressFormat.PNG, 90, out)) {
-                out.flush();
-                out.close();
-            }
-
-            return true;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+    /**
+     * 获取图片目录中的文件
+     *
+     * @param fileName 文件名
+     * @return 文件
+     */
+    public static File getBitmapFile(String fileName) {
+        return new File(getBitmapDir(), fileName);
     }
 }
@@ -0,0 +1,96 @@
+package com.jp.jcanvas.benchmark;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * 运行基准测试并保存结果。
+ * <p>
+ * 启动后在后台线程运行所有基准测试，结果以 JSON 格式写入应用的外部文件目录
+ * （Android/data/com.jp.jcanvas.benchmark/files/），同时输出到 logcat ，标签为 TAG 。
+ * 可以通过 adb 启动并取回结果：
+ * </p>
+ * <pre>
+ * adb shell am start -W -n com.jp.jcanvas.benchmark/.BenchmarkActivity
+ * adb pull /sdcard/Android/data/com.jp.jcanvas.benchmark/files/
+ * </pre>
+ */
+public class BenchmarkActivity extends Activity {
+
+    private static final String TAG = "JCanvasBenchmark";
+
+    /**
+     * 基准测试使用的画布尺寸
+     */
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    private TextView mOutput;
+    private Thread mThread;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        // 运行期间保持屏幕常亮，避免降频影响结果
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        mOutput = new TextView(this);
+        ScrollView scroll = new ScrollView(this);
+        scroll.addView(mOutput);
+        setContentView(scroll);
+
+        if (null == mThread) {
+            mThread = new Thread(this::runBenchmarks, "JCanvas-Benchmark");
+            mThread.start();
+        }
+    }
+
+    private void runBenchmarks() {
+        BenchmarkRunner runner = new BenchmarkRunner(WIDTH, HEIGHT, this::print);
+        try {
+            JSONObject result = runner.runAll();
+            File file = save(result);
+            print("saved to " + file.getAbsolutePath());
+            Log.i(TAG, result.toString());
+
+        } catch (JSONException | IOException e) {
+            Log.e(TAG, "benchmark failed", e);
+            print("failed: " + e);
+        }
+    }
+
+    private File save(JSONObject result) throws IOException, JSONException {
+        File dir = getExternalFilesDir(null);
+        if (null == dir) {
+            dir = getFilesDir();
+        }
+
+        File file = new File(dir, "jcanvas-benchmark-" + result.getLong("timestamp") + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(result.toString(2));
+
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private void print(String message) {
+        Log.i(TAG, message);
+        runOnUiThread(() -> mOutput.append(message + "\n"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.jp.jcanvas.benchmark;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.jp.jcanvas.brush.BaseBrush;
+import com.jp.jcanvas.entity.Track;
+
+/**
+ * 基准测试使用的笔刷，与应用中的笔刷一样以描边绘制整条路径
+ */
+public class BenchmarkBrush extends BaseBrush<BenchmarkBrush> {
+
+    @Override
+    public Drawable getIcon() {
+        return new ColorDrawable(Color.BLACK);
+    }
+
+    @Override
+    public String getName() {
+        return "Benchmark";
+    }
+
+    @Override
+    public void initBrush() {
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeJoin(Paint.Join.ROUND);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mPaint.setStrokeWidth(12f);
+        mPaint.setColor(Color.argb(255, 64, 64, 64));
+    }
+
+    @Override
+    public BenchmarkBrush cloneBrush() {
+        BenchmarkBrush brush = new BenchmarkBrush();
+        brush.mPaint.set(mPaint);
+        return brush;
+    }
+
+    @Override
+    public void drawTrack(Canvas canvas, Track track) {
+        canvas.drawPath(track.getPath(), mPaint);
+    }
+
+    @Override
+    public void drawPreview(Canvas canvas, Track track) {
+        drawTrack(canvas, track);
+    }
+}
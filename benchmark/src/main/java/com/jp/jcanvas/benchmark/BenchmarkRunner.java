@@ -0,0 +1,194 @@
+package com.jp.jcanvas.benchmark;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.os.Build;
+
+import com.jp.jcanvas.entity.HistoryData;
+import com.jp.jcanvas.entity.PointV;
+import com.jp.jcanvas.entity.Track;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 路径相关热点的基准测试。
+ * <p>
+ * 对每种路径集与每个规模分别测量：
+ * 构造路径（Track.addStation）、复制路径（Track(Track)）、变换路径（Track.applyTransform）、
+ * 绘制单条历史记录（HistoryData.draw）以及清空缓存后按顺序重放整个历史记录。
+ * 每项先预热一次，之后至少运行 MIN_RUNS 次且累计至少 MIN_TIME_NANOS ，最多 MAX_RUNS 次。
+ * </p>
+ */
+public class BenchmarkRunner {
+
+    /**
+     * 路径数量
+     */
+    public static final int[] SIZES = {100, 1_000, 10_000};
+
+    private static final long SEED = 20180101L;
+    private static final int MIN_RUNS = 5;
+    private static final int MAX_RUNS = 50;
+    private static final long MIN_TIME_NANOS = 500_000_000L;
+
+    /**
+     * 进度回调，在运行基准测试的线程上回调
+     */
+    public interface Listener {
+        void onProgress(String message);
+    }
+
+    private interface Operation {
+        void run();
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Listener mListener;
+
+    /**
+     * @param width    画布宽度
+     * @param height   画布高度
+     * @param listener 进度回调
+     */
+    public BenchmarkRunner(int width, int height, Listener listener) {
+        mWidth = width;
+        mHeight = height;
+        mListener = listener;
+    }
+
+    /**
+     * 运行所有基准测试
+     *
+     * @return JSON 格式的结果
+     * @throws JSONException 生成结果失败
+     */
+    public JSONObject runAll() throws JSONException {
+        JSONArray results = new JSONArray();
+        Bitmap cache = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(cache);
+        BenchmarkBrush brush = new BenchmarkBrush();
+
+        for (StrokeCorpus.Kind kind : StrokeCorpus.Kind.values()) {
+            for (int size : SIZES) {
+                StrokeCorpus corpus = StrokeCorpus.generate(kind, size, mWidth, mHeight, SEED);
+                runCorpus(corpus, brush, cache, canvas, results);
+            }
+        }
+        cache.recycle();
+
+        JSONObject device = new JSONObject();
+        device.put("manufacturer", Build.MANUFACTURER);
+        device.put("model", Build.MODEL);
+        device.put("sdk", Build.VERSION.SDK_INT);
+        device.put("cores", Runtime.getRuntime().availableProcessors());
+
+        JSONObject root = new JSONObject();
+        root.put("version", com.jp.jcanvas.BuildConfig.VERSION_NAME);
+        root.put("timestamp", System.currentTimeMillis());
+        root.put("device", device);
+        root.put("canvas", mWidth + "x" + mHeight);
+        root.put("results", results);
+        return root;
+    }
+
+    private void runCorpus(StrokeCorpus corpus, BenchmarkBrush brush,
+                           Bitmap cache, Canvas canvas, JSONArray results) throws JSONException {
+        int strokes = corpus.getStrokeCount();
+        long stations = corpus.getStationCount();
+
+        results.put(measure("Track.addStation", corpus, stations, () -> {
+            for (int i = 0; i < strokes; i++) {
+                PointV[] s = corpus.getStations(i);
+                Track track = new Track();
+                track.departure(s[0]);
+                for (int j = 1; j < s.length; j++) {
+                    track.addStation(s[j]);
+                }
+            }
+        }));
+
+        List<Track> tracks = corpus.buildTracks();
+        results.put(measure("Track.copy", corpus, strokes, () -> {
+            for (Track track : tracks) {
+                new Track(track);
+            }
+        }));
+
+        // 交替使用互逆的变换，多次运行后坐标不会漂移
+        Matrix forward = new Matrix();
+        forward.setScale(1.5f, 1.5f);
+        forward.postTranslate(-120f, -80f);
+        Matrix inverse = new Matrix();
+        forward.invert(inverse);
+        boolean[] flip = {false};
+        results.put(measure("Track.applyTransform", corpus, strokes, () -> {
+            Matrix matrix = flip[0] ? inverse : forward;
+            flip[0] = !flip[0];
+            for (Track track : tracks) {
+                track.applyTransform(matrix);
+            }
+        }));
+
+        List<HistoryData> history = new ArrayList<>(strokes);
+        for (Track track : corpus.buildTracks()) {
+            history.add(new HistoryData(brush, track));
+        }
+        results.put(measure("HistoryData.draw", corpus, strokes, () -> {
+            for (HistoryData data : history) {
+                data.draw(canvas);
+            }
+        }));
+
+        // 与重建缓存相同：清空后按提交顺序重绘所有路径
+        results.put(measure("replay", corpus, 1, () -> {
+            cache.eraseColor(Color.TRANSPARENT);
+            for (HistoryData data : history) {
+                data.draw(canvas);
+            }
+        }));
+    }
+
+    private JSONObject measure(String name, StrokeCorpus corpus, long operations,
+                               Operation operation) throws JSONException {
+        mListener.onProgress(name + " " + corpus.getKind().getName()
+                + " x" + corpus.getStrokeCount());
+
+        // 预热
+        operation.run();
+
+        long[] samples = new long[MAX_RUNS];
+        int runs = 0;
+        long total = 0L;
+        while (runs < MAX_RUNS && (runs < MIN_RUNS || total < MIN_TIME_NANOS)) {
+            long start = System.nanoTime();
+            operation.run();
+            long time = System.nanoTime() - start;
+            samples[runs++] = time;
+            total += time;
+        }
+        Arrays.sort(samples, 0, runs);
+
+        JSONObject result = new JSONObject();
+        result.put("name", name);
+        result.put("corpus", corpus.getKind().getName());
+        result.put("strokes", corpus.getStrokeCount());
+        result.put("stations", corpus.getStationCount());
+        result.put("operations", operations);
+        result.put("runs", runs);
+        result.put("min_ns", samples[0]);
+        result.put("median_ns", samples[runs / 2]);
+        result.put("mean_ns", total / runs);
+        result.put("max_ns", samples[runs - 1]);
+        result.put("median_ns_per_op", (double) samples[runs / 2] / operations);
+        return result;
+    }
+}
@@ -0,0 +1,219 @@
+package com.jp.jcanvas.benchmark;
+
+import com.jp.jcanvas.entity.PointV;
+import com.jp.jcanvas.entity.Track;
+import com.jp.jcanvas.entity.Velocity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 确定性的合成路径集。
+ * <p>
+ * 相同的种类、数量、尺寸与种子总是生成相同的路径，不同版本之间的结果可以直接比较。
+ * 站点按 8ms 的间隔采样，速率由相邻站点的位移计算。
+ * </p>
+ */
+public final class StrokeCorpus {
+
+    /**
+     * 采样间隔，单位为毫秒
+     */
+    private static final long SAMPLE_INTERVAL = 8L;
+
+    public enum Kind {
+        /**
+         * 随机涂鸦：方向连续变化的短路径
+         */
+        SCRIBBLE("scribble"),
+        /**
+         * 长直线：横跨画布、带少量抖动的长路径
+         */
+        LINE("line"),
+        /**
+         * 密集排线：集中在小区域内互相重叠的短平行线
+         */
+        HATCHING("hatching");
+
+        private final String mName;
+
+        Kind(String name) {
+            mName = name;
+        }
+
+        public String getName() {
+            return mName;
+        }
+    }
+
+    private final Kind mKind;
+    private final List<PointV[]> mStrokes;
+
+    private StrokeCorpus(Kind kind, List<PointV[]> strokes) {
+        mKind = kind;
+        mStrokes = strokes;
+    }
+
+    /**
+     * 生成路径集
+     *
+     * @param kind    种类
+     * @param strokes 路径数量
+     * @param width   画布宽度
+     * @param height  画布高度
+     * @param seed    随机数种子
+     * @return 路径集
+     */
+    public static StrokeCorpus generate(Kind kind, int strokes, int width, int height, long seed) {
+        Random random = new Random(seed);
+        List<PointV[]> list = new ArrayList<>(strokes);
+        for (int i = 0; i < strokes; i++) {
+            switch (kind) {
+                case SCRIBBLE:
+                    list.add(scribble(random, width, height));
+                    break;
+
+                case LINE:
+                    list.add(line(random, width, height));
+                    break;
+
+                case HATCHING:
+                default:
+                    list.add(hatching(random, i, width, height));
+                    break;
+            }
+        }
+        return new StrokeCorpus(kind, list);
+    }
+
+    public Kind getKind() {
+        return mKind;
+    }
+
+    public int getStrokeCount() {
+        return mStrokes.size();
+    }
+
+    /**
+     * 获取站点总数
+     *
+     * @return 站点总数
+     */
+    public long getStationCount() {
+        long count = 0L;
+        for (PointV[] stroke : mStrokes) {
+            count += stroke.length;
+        }
+        return count;
+    }
+
+    /**
+     * 获取第 index 条路径的站点
+     *
+     * @param index 路径
+     * @return 站点
+     */
+    public PointV[] getStations(int index) {
+        return mStrokes.get(index);
+    }
+
+    /**
+     * 构造所有路径
+     *
+     * @return 路径
+     */
+    public List<Track> buildTracks() {
+        List<Track> tracks = new ArrayList<>(mStrokes.size());
+        for (PointV[] stroke : mStrokes) {
+            tracks.add(build(stroke));
+        }
+        return tracks;
+    }
+
+    /**
+     * 由站点构造路径
+     *
+     * @param stations 站点
+     * @return 路径
+     */
+    public static Track build(PointV[] stations) {
+        Track track = new Track();
+        track.departure(stations[0]);
+        for (int i = 1; i < stations.length; i++) {
+            track.addStation(stations[i]);
+        }
+        return track;
+    }
+
+    private static PointV[] scribble(Random random, int width, int height) {
+        int count = 20 + random.nextInt(60);
+        float[] xy = new float[2 * count];
+        float x = random.nextFloat() * width;
+        float y = random.nextFloat() * height;
+        double angle = random.nextDouble() * 2.0 * Math.PI;
+        for (int i = 0; i < count; i++) {
+            angle += (random.nextDouble() - 0.5) * 1.2;
+            float step = 4f + random.nextFloat() * 12f;
+            x = clamp(x + (float) Math.cos(angle) * step, width);
+            y = clamp(y + (float) Math.sin(angle) * step, height);
+            xy[2 * i] = x;
+            xy[2 * i + 1] = y;
+        }
+        return toStations(xy, random);
+    }
+
+    private static PointV[] line(Random random, int width, int height) {
+        int count = 150 + random.nextInt(100);
+        float[] xy = new float[2 * count];
+        float x0 = random.nextFloat() * width * 0.1f;
+        float y0 = random.nextFloat() * height;
+        float x1 = width - random.nextFloat() * width * 0.1f;
+        float y1 = random.nextFloat() * height;
+        for (int i = 0; i < count; i++) {
+            float t = (float) i / (count - 1);
+            xy[2 * i] = clamp(x0 + (x1 - x0) * t + (random.nextFloat() - 0.5f), width);
+            xy[2 * i + 1] = clamp(y0 + (y1 - y0) * t + (random.nextFloat() - 0.5f), height);
+        }
+        return toStations(xy, random);
+    }
+
+    private static PointV[] hatching(Random random, int index, int width, int height) {
+        // 每 64 条路径换一个区域，区域内的路径以 3px 间隔平行排列并互相重叠
+        int block = index / 64;
+        Random area = new Random(block);
+        float cx = area.nextFloat() * width;
+        float cy = area.nextFloat() * height;
+        float offset = (index % 64) * 3f;
+
+        int count = 12;
+        float[] xy = new float[2 * count];
+        for (int i = 0; i < count; i++) {
+            xy[2 * i] = clamp(cx + offset + i * 8f + random.nextFloat(), width);
+            xy[2 * i + 1] = clamp(cy - offset + i * 8f + random.nextFloat(), height);
+        }
+        return toStations(xy, random);
+    }
+
+    private static PointV[] toStations(float[] xy, Random random) {
+        int count = xy.length / 2;
+        PointV[] stations = new PointV[count];
+        long time = random.nextInt(1000);
+        float seconds = SAMPLE_INTERVAL / 1000f;
+        for (int i = 0; i < count; i++) {
+            float vx = 0f;
+            float vy = 0f;
+            if (i > 0) {
+                vx = (xy[2 * i] - xy[2 * i - 2]) / seconds;
+                vy = (xy[2 * i + 1] - xy[2 * i - 1]) / seconds;
+            }
+            stations[i] = new PointV(xy[2 * i], xy[2 * i + 1], new Velocity(vx, vy), time);
+            time += SAMPLE_INTERVAL;
+        }
+        return stations;
+    }
+
+    private static float clamp(float value, int max) {
+        return Math.max(0f, Math.min(max, value));
+    }
+}
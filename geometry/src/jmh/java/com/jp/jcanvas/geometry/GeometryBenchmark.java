@@ -0,0 +1,158 @@
+package com.jp.jcanvas.geometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路径几何计算的基准测试。
+ * <p>
+ * 每次调用处理一条 POINTS 个点的路径，结果以每秒处理的点数（ops/s 即 points/s）报告。
+ * 路径由固定种子生成的随机涂鸦组成，不同版本之间的结果可以直接比较。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeometryBenchmark {
+
+    private static final int POINTS = 4096;
+
+    private float[] mInput;
+    private float[] mXY;
+    private float[] mSections;
+    private float[] mBounds;
+    private float[] mAffine;
+    private float[] mPerspective;
+    private int[] mKeep;
+    private int[] mIndex;
+    private float[] mFraction;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(20180101L);
+        mInput = new float[2 * POINTS];
+        float x = 500f;
+        float y = 500f;
+        double angle = 0.0;
+        for (int i = 0; i < POINTS; i++) {
+            angle += (random.nextDouble() - 0.5) * 0.6;
+            float step = 2f + random.nextFloat() * 6f;
+            x += (float) Math.cos(angle) * step;
+            y += (float) Math.sin(angle) * step;
+            mInput[2 * i] = x;
+            mInput[2 * i + 1] = y;
+        }
+
+        mXY = new float[2 * POINTS];
+        mSections = new float[6 * POINTS];
+        mBounds = new float[4];
+        mAffine = new float[]{1.5f, 0.2f, -120f, -0.2f, 1.5f, 80f, 0f, 0f, 1f};
+        mPerspective = new float[]{1.5f, 0.2f, -120f, -0.2f, 1.5f, 80f, 1e-4f, 2e-4f, 1f};
+        mKeep = new int[POINTS];
+        float length = PolylineResampler.length(mInput, POINTS);
+        mIndex = new int[PolylineResampler.capacity(length, 4f)];
+        mFraction = new float[mIndex.length];
+    }
+
+    /**
+     * 构造路径：逐点追加站点，同时生成新确定的分段并更新其包围盒，
+     * 与绘制时 Track#getSection 与 Track#computeSectionBounds 的增量计算相同
+     */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void construct(Blackhole bh) {
+        float[] xy = mXY;
+        for (int i = 0; i < POINTS; i++) {
+            xy[2 * i] = mInput[2 * i];
+            xy[2 * i + 1] = mInput[2 * i + 1];
+            if (i >= 2) {
+                // 新增站点后，上一个分段的终点才确定
+                section(xy, i - 1, mSections);
+                bounds(xy, i - 1, i, mBounds);
+            }
+        }
+        bh.consume(mSections);
+        bh.consume(mBounds);
+    }
+
+    /**
+     * 一次生成整条路径的所有分段，与 Track#getPath 相同
+     */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void smooth(Blackhole bh) {
+        int count = QuadSmoother.sectionCount(POINTS);
+        for (int i = 0; i < count; i++) {
+            section(mInput, i, mSections);
+        }
+        bh.consume(mSections);
+    }
+
+    // 与 Track#getSection 相同，依次写入起点、控制点与终点
+    private static void section(float[] xy, int index, float[] out) {
+        int o = 6 * index;
+        out[o] = QuadSmoother.startX(xy, index);
+        out[o + 1] = QuadSmoother.startY(xy, index);
+        out[o + 2] = QuadSmoother.controlX(xy, index);
+        out[o + 3] = QuadSmoother.controlY(xy, index);
+        out[o + 4] = QuadSmoother.endX(xy, index);
+        out[o + 5] = QuadSmoother.endY(xy, index);
+    }
+
+    // 与 Track#computeSectionBounds(int, int, RectF) 相同，统计站点 hullFirst(from) 到 to 的坐标
+    private static void bounds(float[] xy, int from, int to, float[] out) {
+        int start = QuadSmoother.hullFirst(from);
+        float left = xy[2 * start];
+        float top = xy[2 * start + 1];
+        float right = left;
+        float bottom = top;
+        for (int i = start + 1; i <= to; i++) {
+            float x = xy[2 * i];
+            float y = xy[2 * i + 1];
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x);
+            bottom = Math.max(bottom, y);
+        }
+        out[0] = left;
+        out[1] = top;
+        out[2] = right;
+        out[3] = bottom;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void transformAffine(Blackhole bh) {
+        PointTransform.map(mAffine, mInput, 0, mXY, 0, POINTS);
+        bh.consume(mXY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void transformPerspective(Blackhole bh) {
+        PointTransform.map(mPerspective, mInput, 0, mXY, 0, POINTS);
+        bh.consume(mXY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int simplify() {
+        return PolylineSimplifier.simplify(mInput, POINTS, 0.5f, mKeep);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int resample() {
+        return PolylineResampler.resample(mInput, POINTS, 4f, mIndex, mFraction);
+    }
+}
@@ -0,0 +1,73 @@
+package com.jp.jcanvas.geometry;
+
+/**
+ * 点的射影变换
+ * <p>
+ * 变换以 3 x 3 矩阵的 9 个值按行存放，与 android.graphics.Matrix#getValues(float[]) 的顺序相同：
+ * scaleX, skewX, transX, skewY, scaleY, transY, persp0, persp1, persp2 。
+ * 没有透视分量时只进行仿射变换，不做除法。
+ * </p>
+ * <p>
+ * 只使用基本类型的数组，不依赖 Android 。
+ * </p>
+ */
+public final class PointTransform {
+
+    private PointTransform() {
+    }
+
+    /**
+     * 判断矩阵是否为仿射变换
+     *
+     * @param m 矩阵的 9 个值
+     * @return 是否为仿射变换
+     */
+    public static boolean isAffine(float[] m) {
+        return 0f == m[6] && 0f == m[7] && 1f == m[8];
+    }
+
+    /**
+     * 变换 src 中从 srcIndex 开始的 count 个点，写入 dst 中从 dstIndex 开始的位置。
+     * src 与 dst 可以是同一个数组
+     *
+     * @param m        矩阵的 9 个值
+     * @param src      交错存放的坐标
+     * @param srcIndex 起始点
+     * @param dst      输出
+     * @param dstIndex 输出的起始点
+     * @param count    点的数量
+     */
+    public static void map(float[] m, float[] src, int srcIndex,
+                           float[] dst, int dstIndex, int count) {
+        float sx = m[0];
+        float kx = m[1];
+        float tx = m[2];
+        float ky = m[3];
+        float sy = m[4];
+        float ty = m[5];
+        int s = 2 * srcIndex;
+        int d = 2 * dstIndex;
+
+        if (isAffine(m)) {
+            for (int i = 0; i < count; i++, s += 2, d += 2) {
+                float x = src[s];
+                float y = src[s + 1];
+                dst[d] = sx * x + kx * y + tx;
+                dst[d + 1] = ky * x + sy * y + ty;
+            }
+            return;
+        }
+
+        float p0 = m[6];
+        float p1 = m[7];
+        float p2 = m[8];
+        for (int i = 0; i < count; i++, s += 2, d += 2) {
+            float x = src[s];
+            float y = src[s + 1];
+            float w = p0 * x + p1 * y + p2;
+            float z = 0f == w ? 0f : 1f / w;
+            dst[d] = (sx * x + kx * y + tx) * z;
+            dst[d + 1] = (ky * x + sy * y + ty) * z;
+        }
+    }
+}
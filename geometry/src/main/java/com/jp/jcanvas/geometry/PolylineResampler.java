@@ -0,0 +1,102 @@
+package com.jp.jcanvas.geometry;
+
+/**
+ * 折线的等距重采样
+ * <p>
+ * 沿折线按弧长每隔 spacing 取一个点，首尾两点总是保留。
+ * 输入点的采样间隔与触摸事件的频率和手指速度有关，重采样后点的密度只与路径的长度有关。
+ * 结果以“所在线段与线段内的比例”表示，调用方可以用同样的比例插值坐标以外的数据（速率、时间等）。
+ * </p>
+ * <p>
+ * 只使用基本类型的数组，不依赖 Android 。
+ * </p>
+ */
+public final class PolylineResampler {
+
+    private PolylineResampler() {
+    }
+
+    /**
+     * 计算折线的长度
+     *
+     * @param xy    交错存放的坐标
+     * @param count 点的数量
+     * @return 长度
+     */
+    public static float length(float[] xy, int count) {
+        // 使用 double 累加，很长的折线也不会因舍入误差明显偏短
+        double length = 0.0;
+        for (int i = 0; i < count - 1; i++) {
+            length += segmentLength(xy, i);
+        }
+        return (float) length;
+    }
+
+    private static double segmentLength(float[] xy, int i) {
+        double dx = xy[2 * i + 2] - xy[2 * i];
+        double dy = xy[2 * i + 3] - xy[2 * i + 1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * 计算重采样后点的数量上限，用于分配输出数组
+     *
+     * @param length  折线的长度
+     * @param spacing 采样间隔
+     * @return 数量上限
+     */
+    public static int capacity(float length, float spacing) {
+        return (int) Math.ceil(length / spacing) + 2;
+    }
+
+    /**
+     * 重采样。第 k 个结果点位于线段 (index[k], index[k] + 1) 上，距离起点的比例为 fraction[k]
+     * <p>
+     * 输出数组的长度不足时丢弃多余的中间点，终点仍然保留，不会越界。
+     * </p>
+     *
+     * @param xy       交错存放的坐标
+     * @param count    点的数量
+     * @param spacing  采样间隔，必须为正数
+     * @param index    输出的线段序号，长度至少为 {@link #capacity(float, float)}
+     * @param fraction 输出的比例，长度同上
+     * @return 结果点的数量
+     */
+    public static int resample(float[] xy, int count, float spacing,
+                               int[] index, float[] fraction) {
+        if (count <= 0) {
+            return 0;
+        }
+        index[0] = 0;
+        fraction[0] = 0f;
+        if (1 == count) {
+            return 1;
+        }
+
+        // 最后一个位置留给终点
+        int limit = Math.min(index.length, fraction.length) - 1;
+        int out = 1;
+        // 距离下一个采样点的剩余弧长。使用 double 计算，避免累积误差产生多于 capacity 的点
+        double remain = spacing;
+        for (int i = 0; i < count - 1 && out < limit; i++) {
+            double len = segmentLength(xy, i);
+            double pos = 0.0;
+            while (len - pos >= remain && out < limit) {
+                pos += remain;
+                remain = spacing;
+                index[out] = i;
+                fraction[out] = (float) Math.min(1.0, pos / len);
+                out++;
+            }
+            remain -= len - pos;
+        }
+
+        // 保留终点，与最后一个采样点重合时不重复
+        if (out <= limit && (index[out - 1] != count - 2 || fraction[out - 1] < 1f)) {
+            index[out] = count - 2;
+            fraction[out] = 1f;
+            out++;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package com.jp.jcanvas.geometry;
+
+/**
+ * 折线简化
+ * <p>
+ * 使用 Ramer-Douglas-Peucker 算法：保留首尾两点，找出中间距离首尾连线最远的点，
+ * 距离超过容差时保留该点并对两侧分别处理，否则删除中间的所有点。
+ * 曲率大的位置会保留更多的点，平直或缓慢移动产生的密集点会被删除。
+ * 保证每个被删除的点到简化后折线的距离都不超过容差。
+ * </p>
+ * <p>
+ * 只使用基本类型的数组，不依赖 Android 。
+ * </p>
+ */
+public final class PolylineSimplifier {
+
+    private PolylineSimplifier() {
+    }
+
+    /**
+     * 简化折线
+     *
+     * @param xy        交错存放的坐标 x0, y0, x1, y1, ...
+     * @param count     点的数量
+     * @param tolerance 允许的最大偏差
+     * @param out       按升序写入保留的点的序号，长度至少为 count
+     * @return 保留的点的数量
+     */
+    public static int simplify(float[] xy, int count, float tolerance, int[] out) {
+        if (count <= 2 || tolerance <= 0f) {
+            for (int i = 0; i < count; i++) {
+                out[i] = i;
+            }
+            return count;
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        // 使用显式的栈代替递归，避免很长的路径导致栈溢出。待处理的区间互不重叠，最多 count 个
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        float limit = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            float ax = xy[2 * first];
+            float ay = xy[2 * first + 1];
+            float bx = xy[2 * last];
+            float by = xy[2 * last + 1];
+            float max = 0f;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                float d = segmentDistanceSq(xy[2 * i], xy[2 * i + 1], ax, ay, bx, by);
+                if (d > max) {
+                    max = d;
+                    index = i;
+                }
+            }
+
+            if (max > limit) {
+                keep[index] = true;
+                if (index - first > 1) {
+                    stack[top++] = first;
+                    stack[top++] = index;
+                }
+                if (last - index > 1) {
+                    stack[top++] = index;
+                    stack[top++] = last;
+                }
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                out[kept++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * 计算点 (px, py) 到线段 (ax, ay) - (bx, by) 的距离的平方
+     *
+     * @return 距离的平方
+     */
+    public static float segmentDistanceSq(float px, float py,
+                                          float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float len = dx * dx + dy * dy;
+        float t = 0f;
+        if (len > 0f) {
+            t = ((px - ax) * dx + (py - ay) * dy) / len;
+            t = Math.max(0f, Math.min(1f, t));
+        }
+
+        float x = ax + t * dx - px;
+        float y = ay + t * dy - py;
+        return x * x + y * y;
+    }
+}
@@ -0,0 +1,63 @@
+package com.jp.jcanvas.geometry;
+
+/**
+ * 折线的二次贝塞尔平滑
+ * <p>
+ * n 个站点生成 n - 1 个分段。第 k 个分段以站点 k - 1 与 k 的中点为起点（第 0 个分段以站点 0 为起点）、
+ * 以站点 k 为控制点、以站点 k 与 k + 1 的中点为终点，相邻分段在中点处切线连续。
+ * </p>
+ * <p>
+ * 坐标交错存放在数组中 x0, y0, x1, y1, ... 。只使用基本类型的数组，不依赖 Android 。
+ * </p>
+ */
+public final class QuadSmoother {
+
+    private QuadSmoother() {
+    }
+
+    /**
+     * 获取分段数量
+     *
+     * @param stations 站点数量
+     * @return 分段数量
+     */
+    public static int sectionCount(int stations) {
+        return Math.max(0, stations - 1);
+    }
+
+    public static float startX(float[] xy, int index) {
+        return 0 == index ? xy[0] : (xy[2 * index - 2] + xy[2 * index]) / 2f;
+    }
+
+    public static float startY(float[] xy, int index) {
+        return 0 == index ? xy[1] : (xy[2 * index - 1] + xy[2 * index + 1]) / 2f;
+    }
+
+    public static float controlX(float[] xy, int index) {
+        return xy[2 * index];
+    }
+
+    public static float controlY(float[] xy, int index) {
+        return xy[2 * index + 1];
+    }
+
+    public static float endX(float[] xy, int index) {
+        return (xy[2 * index] + xy[2 * index + 2]) / 2f;
+    }
+
+    public static float endY(float[] xy, int index) {
+        return (xy[2 * index + 1] + xy[2 * index + 3]) / 2f;
+    }
+
+    /**
+     * 获取包含第 from 个分段的凸包的第一个站点。
+     * 曲线总在其起点、控制点与终点构成的凸包之内，而起点与终点都是相邻站点的中点，
+     * 所以 [from, to) 区间内的分段位于站点 hullFirst(from) 到 to 的包围盒之内
+     *
+     * @param from 起始分段
+     * @return 站点序号
+     */
+    public static int hullFirst(int from) {
+        return Math.max(0, from - 1);
+    }
+}
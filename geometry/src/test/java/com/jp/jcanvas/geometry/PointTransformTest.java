@@ -0,0 +1,73 @@
+package com.jp.jcanvas.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PointTransformTest {
+
+    @Test
+    public void detectsAffine() {
+        assertTrue(PointTransform.isAffine(new float[]{2f, 0f, 1f, 0f, 2f, 1f, 0f, 0f, 1f}));
+        assertTrue(!PointTransform.isAffine(new float[]{2f, 0f, 1f, 0f, 2f, 1f, 0.1f, 0f, 1f}));
+        assertTrue(!PointTransform.isAffine(new float[]{2f, 0f, 1f, 0f, 2f, 1f, 0f, 0f, 2f}));
+    }
+
+    @Test
+    public void mapsAffine() {
+        // x' = 2x + 0.5y + 10, y' = -0.5x + 3y - 4
+        float[] m = {2f, 0.5f, 10f, -0.5f, 3f, -4f, 0f, 0f, 1f};
+        float[] src = {1f, 2f, -3f, 4f};
+        float[] dst = new float[4];
+
+        PointTransform.map(m, src, 0, dst, 0, 2);
+
+        assertEquals(13f, dst[0], 1e-5f);
+        assertEquals(1.5f, dst[1], 1e-5f);
+        assertEquals(6f, dst[2], 1e-5f);
+        assertEquals(9.5f, dst[3], 1e-5f);
+    }
+
+    @Test
+    public void mapsPerspective() {
+        // w = 0.5x + 0.25y + 1
+        float[] m = {1f, 0f, 2f, 0f, 1f, 3f, 0.5f, 0.25f, 1f};
+        float[] src = {2f, 4f};
+        float[] dst = new float[2];
+
+        PointTransform.map(m, src, 0, dst, 0, 1);
+
+        assertEquals(4f / 3f, dst[0], 1e-5f);
+        assertEquals(7f / 3f, dst[1], 1e-5f);
+    }
+
+    @Test
+    public void mapsPointAtInfinityToOrigin() {
+        // w = x - 1 ，x = 1 时 w 为 0
+        float[] m = {1f, 0f, 0f, 0f, 1f, 0f, 1f, 0f, -1f};
+        float[] src = {1f, 5f};
+        float[] dst = new float[2];
+
+        PointTransform.map(m, src, 0, dst, 0, 1);
+
+        assertEquals(0f, dst[0], 0f);
+        assertEquals(0f, dst[1], 0f);
+    }
+
+    @Test
+    public void mapsInPlaceWithOffsets() {
+        float[] m = {1f, 0f, 5f, 0f, 1f, -5f, 0f, 0f, 1f};
+        float[] xy = {1f, 1f, 2f, 2f, 3f, 3f};
+
+        // 只变换后两个点，写回原位置
+        PointTransform.map(m, xy, 1, xy, 1, 2);
+
+        assertEquals(1f, xy[0], 0f);
+        assertEquals(1f, xy[1], 0f);
+        assertEquals(7f, xy[2], 0f);
+        assertEquals(-3f, xy[3], 0f);
+        assertEquals(8f, xy[4], 0f);
+        assertEquals(-2f, xy[5], 0f);
+    }
+}
@@ -0,0 +1,93 @@
+package com.jp.jcanvas.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolylineResamplerTest {
+
+    @Test
+    public void samplesStraightLineEvenly() {
+        float[] xy = {0f, 0f, 4f, 0f, 10f, 0f};
+        int[] index = new int[PolylineResampler.capacity(10f, 1f)];
+        float[] fraction = new float[index.length];
+
+        int n = PolylineResampler.resample(xy, 3, 1f, index, fraction);
+
+        // 起点、9 个中间点与终点，终点正好落在采样间隔上时不重复
+        assertEquals(11, n);
+        for (int k = 0; k < n; k++) {
+            assertEquals(k, x(xy, index[k], fraction[k]), 1e-4f);
+        }
+    }
+
+    @Test
+    public void keepsEndPointOffSpacing() {
+        float[] xy = {0f, 0f, 10.5f, 0f};
+        int[] index = new int[PolylineResampler.capacity(10.5f, 1f)];
+        float[] fraction = new float[index.length];
+
+        int n = PolylineResampler.resample(xy, 2, 1f, index, fraction);
+
+        assertEquals(12, n);
+        assertEquals(10f, x(xy, index[n - 2], fraction[n - 2]), 1e-4f);
+        assertEquals(0, index[n - 1]);
+        assertEquals(1f, fraction[n - 1], 0f);
+    }
+
+    @Test
+    public void handlesDegenerateInput() {
+        int[] index = new int[4];
+        float[] fraction = new float[4];
+
+        assertEquals(0, PolylineResampler.resample(new float[0], 0, 1f, index, fraction));
+        assertEquals(1, PolylineResampler.resample(new float[]{3f, 4f}, 1, 1f, index, fraction));
+        assertEquals(0, index[0]);
+        assertEquals(0f, fraction[0], 0f);
+    }
+
+    @Test
+    public void longPolylineStaysWithinCapacity() {
+        // 很长的折线、很小的间隔，使用 float 累加时会产生多于 capacity 的点
+        int count = 25;
+        float spacing = 0.148f;
+        float[] xy = new float[2 * count];
+        Random random = new Random(25);
+        for (int i = 1; i < count; i++) {
+            xy[2 * i] = xy[2 * i - 2] + 300f + 300f * random.nextFloat();
+            xy[2 * i + 1] = xy[2 * i - 1] + 300f * (random.nextFloat() - 0.5f);
+        }
+        float length = PolylineResampler.length(xy, count);
+        int capacity = PolylineResampler.capacity(length, spacing);
+        int[] index = new int[capacity];
+        float[] fraction = new float[capacity];
+
+        int n = PolylineResampler.resample(xy, count, spacing, index, fraction);
+
+        assertTrue(n <= capacity);
+        assertTrue(n >= capacity - 2);
+        assertEquals(count - 2, index[n - 1]);
+        assertEquals(1f, fraction[n - 1], 0f);
+    }
+
+    @Test
+    public void truncatesWhenOutputIsShort() {
+        float[] xy = {0f, 0f, 100f, 0f};
+        int[] index = new int[5];
+        float[] fraction = new float[5];
+
+        int n = PolylineResampler.resample(xy, 2, 1f, index, fraction);
+
+        // 多余的中间点被丢弃，终点仍然保留
+        assertEquals(5, n);
+        assertEquals(3f, x(xy, index[3], fraction[3]), 1e-4f);
+        assertEquals(1f, fraction[4], 0f);
+    }
+
+    private static float x(float[] xy, int index, float fraction) {
+        return xy[2 * index] + (xy[2 * index + 2] - xy[2 * index]) * fraction;
+    }
+}
@@ -0,0 +1,74 @@
+package com.jp.jcanvas.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PolylineSimplifierTest {
+
+    @Test
+    public void dropsCollinearPoints() {
+        float[] xy = {0f, 0f, 1f, 1f, 2f, 2f, 3f, 3f, 4f, 4f};
+        int[] out = new int[5];
+
+        int kept = PolylineSimplifier.simplify(xy, 5, 0.1f, out);
+
+        assertEquals(2, kept);
+        assertEquals(0, out[0]);
+        assertEquals(4, out[1]);
+    }
+
+    @Test
+    public void keepsCorner() {
+        float[] xy = {0f, 0f, 5f, 0f, 10f, 0f, 10f, 5f, 10f, 10f};
+        int[] out = new int[5];
+
+        int kept = PolylineSimplifier.simplify(xy, 5, 0.5f, out);
+
+        assertEquals(3, kept);
+        assertEquals(0, out[0]);
+        assertEquals(2, out[1]);
+        assertEquals(4, out[2]);
+    }
+
+    @Test
+    public void keepsAllWithoutTolerance() {
+        float[] xy = {0f, 0f, 1f, 0f, 2f, 0f};
+        int[] out = new int[3];
+
+        assertEquals(3, PolylineSimplifier.simplify(xy, 3, 0f, out));
+        assertEquals(2, PolylineSimplifier.simplify(xy, 2, 1f, out));
+    }
+
+    @Test
+    public void droppedPointsStayWithinTolerance() {
+        int count = 2000;
+        float tolerance = 0.5f;
+        float[] xy = new float[2 * count];
+        Random random = new Random(2000);
+        for (int i = 1; i < count; i++) {
+            xy[2 * i] = xy[2 * i - 2] + random.nextFloat();
+            xy[2 * i + 1] = xy[2 * i - 1] + random.nextFloat() - 0.5f;
+        }
+        int[] out = new int[count];
+
+        int kept = PolylineSimplifier.simplify(xy, count, tolerance, out);
+
+        assertTrue(kept < count);
+        assertEquals(0, out[0]);
+        assertEquals(count - 1, out[kept - 1]);
+        for (int k = 1; k < kept; k++) {
+            int a = out[k - 1];
+            int b = out[k];
+            assertTrue(a < b);
+            for (int i = a + 1; i < b; i++) {
+                float d = PolylineSimplifier.segmentDistanceSq(xy[2 * i], xy[2 * i + 1],
+                        xy[2 * a], xy[2 * a + 1], xy[2 * b], xy[2 * b + 1]);
+                assertTrue(d <= tolerance * tolerance);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.jp.jcanvas.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuadSmootherTest {
+
+    private static final float[] XY = {0f, 0f, 10f, 0f, 10f, 10f, 0f, 10f};
+
+    @Test
+    public void countsSections() {
+        assertEquals(0, QuadSmoother.sectionCount(0));
+        assertEquals(0, QuadSmoother.sectionCount(1));
+        assertEquals(3, QuadSmoother.sectionCount(4));
+    }
+
+    @Test
+    public void firstSectionStartsAtFirstStation() {
+        assertEquals(0f, QuadSmoother.startX(XY, 0), 0f);
+        assertEquals(0f, QuadSmoother.startY(XY, 0), 0f);
+        assertEquals(0f, QuadSmoother.controlX(XY, 0), 0f);
+        assertEquals(0f, QuadSmoother.controlY(XY, 0), 0f);
+        assertEquals(5f, QuadSmoother.endX(XY, 0), 0f);
+        assertEquals(0f, QuadSmoother.endY(XY, 0), 0f);
+    }
+
+    @Test
+    public void sectionsRunBetweenMidpoints() {
+        // 第 1 个分段：站点 0 与 1 的中点 -> 站点 1 与 2 的中点，控制点为站点 1
+        assertEquals(5f, QuadSmoother.startX(XY, 1), 0f);
+        assertEquals(0f, QuadSmoother.startY(XY, 1), 0f);
+        assertEquals(10f, QuadSmoother.controlX(XY, 1), 0f);
+        assertEquals(0f, QuadSmoother.controlY(XY, 1), 0f);
+        assertEquals(10f, QuadSmoother.endX(XY, 1), 0f);
+        assertEquals(5f, QuadSmoother.endY(XY, 1), 0f);
+
+        // 最后一个分段终止于最后两个站点的中点
+        assertEquals(5f, QuadSmoother.endX(XY, 2), 0f);
+        assertEquals(10f, QuadSmoother.endY(XY, 2), 0f);
+    }
+
+    @Test
+    public void adjacentSectionsJoin() {
+        for (int i = 0; i < QuadSmoother.sectionCount(4) - 1; i++) {
+            assertEquals(QuadSmoother.endX(XY, i), QuadSmoother.startX(XY, i + 1), 0f);
+            assertEquals(QuadSmoother.endY(XY, i), QuadSmoother.startY(XY, i + 1), 0f);
+        }
+    }
+
+    @Test
+    public void hullContainsSections() {
+        int count = 64;
+        float[] xy = new float[2 * count];
+        Random random = new Random(64);
+        for (int i = 0; i < 2 * count; i++) {
+            xy[i] = 100f * random.nextFloat();
+        }
+
+        assertEquals(0, QuadSmoother.hullFirst(0));
+        assertEquals(0, QuadSmoother.hullFirst(1));
+        assertEquals(4, QuadSmoother.hullFirst(5));
+
+        // 每个分段上的点都位于站点 hullFirst(k) 到 k + 1 的包围盒之内
+        for (int k = 0; k < QuadSmoother.sectionCount(count); k++) {
+            float left = Float.MAX_VALUE;
+            float top = Float.MAX_VALUE;
+            float right = -Float.MAX_VALUE;
+            float bottom = -Float.MAX_VALUE;
+            for (int i = QuadSmoother.hullFirst(k); i <= k + 1; i++) {
+                left = Math.min(left, xy[2 * i]);
+                top = Math.min(top, xy[2 * i + 1]);
+                right = Math.max(right, xy[2 * i]);
+                bottom = Math.max(bottom, xy[2 * i + 1]);
+            }
+
+            for (int s = 0; s <= 16; s++) {
+                float t = s / 16f;
+                float x = quad(QuadSmoother.startX(xy, k), QuadSmoother.controlX(xy, k),
+                        QuadSmoother.endX(xy, k), t);
+                float y = quad(QuadSmoother.startY(xy, k), QuadSmoother.controlY(xy, k),
+                        QuadSmoother.endY(xy, k), t);
+                assertTrue(x >= left - 1e-4f && x <= right + 1e-4f);
+                assertTrue(y >= top - 1e-4f && y <= bottom + 1e-4f);
+            }
+        }
+    }
+
+    private static float quad(float p0, float p1, float p2, float t) {
+        float u = 1f - t;
+        return u * u * p0 + 2f * u * t * p1 + t * t * p2;
+    }
+}
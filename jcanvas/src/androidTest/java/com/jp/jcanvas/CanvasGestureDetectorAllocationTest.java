@@ -0,0 +1,199 @@
+package com.jp.jcanvas;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+
+import com.jp.jcanvas.entity.Offset;
+import com.jp.jcanvas.entity.Point;
+import com.jp.jcanvas.entity.PointV;
+import com.jp.jcanvas.entity.Scale;
+import com.jp.jcanvas.entity.Track;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 检查 {@link CanvasGestureDetector} 在稳定状态下处理移动事件时不分配对象。
+ * <p>
+ * 所有事件在计数之前创建。第一次手势使检测器内部的路径扩容到足够的容量，
+ * 之后的手势在进入绘制或缩放状态后开始计数，只统计主线程上的分配。
+ * </p>
+ * <p>
+ * 需要在连接的设备或模拟器上运行：./gradlew :jcanvas:connectedAndroidTest
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class CanvasGestureDetectorAllocationTest {
+
+    private static final int WARM_UP_EVENTS = 4096;
+    // 进入绘制或缩放状态之前的事件，不计数
+    private static final int SETTLE_EVENTS = 64;
+    private static final int MEASURED_EVENTS = 1024;
+
+    @Test
+    public void drawingMoveEventsDoNotAllocate() {
+        int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            CanvasGestureDetector detector = new CanvasGestureDetector(
+                    InstrumentationRegistry.getTargetContext(), new IdleListener());
+            dispatch(detector, drag(WARM_UP_EVENTS));
+
+            List<MotionEvent> events = drag(SETTLE_EVENTS + MEASURED_EVENTS);
+            // 按下与进入绘制状态之前的移动事件
+            dispatch(detector, events.subList(0, 1 + SETTLE_EVENTS));
+            allocations[0] = countAllocations(detector,
+                    events.subList(1 + SETTLE_EVENTS, 1 + SETTLE_EVENTS + MEASURED_EVENTS));
+            dispatch(detector, events.subList(1 + SETTLE_EVENTS + MEASURED_EVENTS, events.size()));
+            recycle(events);
+        });
+        assertEquals(0, allocations[0]);
+    }
+
+    @Test
+    public void scalingMoveEventsDoNotAllocate() {
+        int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            CanvasGestureDetector detector = new CanvasGestureDetector(
+                    InstrumentationRegistry.getTargetContext(), new IdleListener());
+            dispatch(detector, pinch(SETTLE_EVENTS));
+
+            List<MotionEvent> events = pinch(SETTLE_EVENTS + MEASURED_EVENTS);
+            // 两个触摸点按下与最初的移动事件
+            dispatch(detector, events.subList(0, 2 + SETTLE_EVENTS));
+            allocations[0] = countAllocations(detector,
+                    events.subList(2 + SETTLE_EVENTS, 2 + SETTLE_EVENTS + MEASURED_EVENTS));
+            dispatch(detector, events.subList(2 + SETTLE_EVENTS + MEASURED_EVENTS, events.size()));
+            recycle(events);
+        });
+        assertEquals(0, allocations[0]);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(CanvasGestureDetector detector, List<MotionEvent> events) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < events.size(); i++) {
+            detector.onTouchEvent(events.get(i));
+        }
+        int count = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return count;
+    }
+
+    private static void dispatch(CanvasGestureDetector detector, List<MotionEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            detector.onTouchEvent(events.get(i));
+        }
+    }
+
+    private static void recycle(List<MotionEvent> events) {
+        for (MotionEvent event : events) {
+            event.recycle();
+        }
+    }
+
+    /**
+     * 单指拖动：按下、moves 个移动事件、抬起。每个事件移动 2px ，很快超出触摸阈值
+     */
+    private static List<MotionEvent> drag(int moves) {
+        List<MotionEvent> events = new ArrayList<>(moves + 2);
+        long down = SystemClock.uptimeMillis();
+        events.add(MotionEvent.obtain(down, down, MotionEvent.ACTION_DOWN, 100f, 100f, 0));
+        for (int i = 1; i <= moves; i++) {
+            float x = 100f + 2f * i;
+            float y = 100f + (float) Math.sin(i / 16.0) * 40f;
+            events.add(MotionEvent.obtain(down, down + 4L * i, MotionEvent.ACTION_MOVE, x, y, 0));
+        }
+        long up = down + 4L * (moves + 1);
+        events.add(MotionEvent.obtain(down, up, MotionEvent.ACTION_UP, 100f + 2f * moves, 100f, 0));
+        return events;
+    }
+
+    /**
+     * 双指缩放：两个触摸点依次按下、moves 个两指张开的移动事件、依次抬起
+     */
+    private static List<MotionEvent> pinch(int moves) {
+        List<MotionEvent> events = new ArrayList<>(moves + 4);
+        long down = SystemClock.uptimeMillis();
+        events.add(pointers(down, down, MotionEvent.ACTION_DOWN, 1, 0f));
+        events.add(pointers(down, down, MotionEvent.ACTION_POINTER_DOWN
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 2, 0f));
+        for (int i = 1; i <= moves; i++) {
+            events.add(pointers(down, down + 4L * i, MotionEvent.ACTION_MOVE, 2, 0.5f * i));
+        }
+        long up = down + 4L * (moves + 1);
+        events.add(pointers(down, up, MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 2, 0.5f * moves));
+        events.add(pointers(down, up, MotionEvent.ACTION_UP, 1, 0.5f * moves));
+        return events;
+    }
+
+    private static MotionEvent pointers(long down, long time, int action, int count, float spread) {
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[count];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[count];
+        for (int i = 0; i < count; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = 0 == i ? 300f - spread : 500f + spread;
+            coords[i].y = 400f;
+            coords[i].pressure = 1f;
+            coords[i].size = 1f;
+        }
+        return MotionEvent.obtain(down, time, action, count, properties, coords,
+                0, 0, 1f, 1f, 0, 0, 0, 0);
+    }
+
+    private static class IdleListener implements CanvasGestureDetector.CanvasGestureListener {
+        @Override
+        public boolean onActionDown(Point down) {
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(Point focus) {
+            return true;
+        }
+
+        @Override
+        public boolean onDrawPath(PointV focus, Track track) {
+            return true;
+        }
+
+        @Override
+        public void onScaleStart(Point pivot) {
+        }
+
+        @Override
+        public boolean onScale(Scale scale, Offset pivotOffset) {
+            return true;
+        }
+
+        @Override
+        public void onScaleEnd(Point pivot) {
+        }
+
+        @Override
+        public boolean onMove(PointV focus, Offset offset) {
+            return true;
+        }
+
+        @Override
+        public boolean onActionUp(PointV focus, boolean fling) {
+            return true;
+        }
+
+        @Override
+        public void onCancel() {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.jp.jcanvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayList;
+
+/**
+ * ARGB_8888 位图的复用池。
+ * <p>
+ * Surface 尺寸变化时释放的缓存与图层放入池中，之后申请位图时优先复用。
+ * API 19 及以上通过 {@link Bitmap#reconfigure(int, int, Bitmap.Config)} 复用分配的内存不小于所需大小的位图，
+ * 更低的版本只复用尺寸相同的位图。池中的位图超出预算时回收最早放入的位图。
+ * </p>
+ * <p>
+ * 线程安全。
+ * </p>
+ */
+class BitmapPool {
+
+    private final ArrayList<Bitmap> mPool;
+    private long mBudget;
+    private long mSize;
+
+    /**
+     * @param budget 池中位图可以占用的内存
+     */
+    BitmapPool(long budget) {
+        mPool = new ArrayList<>();
+        mBudget = budget;
+        mSize = 0L;
+    }
+
+    /**
+     * 申请位图。复用的位图已被清空
+     *
+     * @param width  宽度
+     * @param height 高度
+     * @return 位图
+     */
+    synchronized Bitmap acquire(int width, int height) {
+        long required = 4L * width * height;
+        boolean reconfigurable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+
+        // 选择能容纳所需大小的最小位图，减少浪费
+        int best = -1;
+        long bestSize = Long.MAX_VALUE;
+        for (int i = 0; i < mPool.size(); i++) {
+            Bitmap bitmap = mPool.get(i);
+            long size = sizeOf(bitmap);
+            boolean fits = (bitmap.getWidth() == width && bitmap.getHeight() == height)
+                    || (reconfigurable && size >= required);
+            if (fits && size < bestSize) {
+                best = i;
+                bestSize = size;
+            }
+        }
+
+        if (best < 0) {
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        Bitmap bitmap = mPool.remove(best);
+        mSize -= bestSize;
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            // 尺寸不同的位图只有在支持 reconfigure 时才会被选中
+            if (reconfigurable) {
+                Reconfigure.apply(bitmap, width, height);
+            }
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * 将不再使用的位图放入池中
+     *
+     * @param bitmap 位图，为 null 时忽略
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (null == bitmap || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || Bitmap.Config.ARGB_8888 != bitmap.getConfig()) {
+            bitmap.recycle();
+            return;
+        }
+
+        mPool.add(bitmap);
+        mSize += sizeOf(bitmap);
+        while (mSize > mBudget && !mPool.isEmpty()) {
+            Bitmap oldest = mPool.remove(0);
+            mSize -= sizeOf(oldest);
+            oldest.recycle();
+        }
+    }
+
+    /**
+     * 回收池中所有的位图
+     */
+    synchronized void clear() {
+        for (Bitmap bitmap : mPool) {
+            bitmap.recycle();
+        }
+        mPool.clear();
+        mSize = 0L;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return Reconfigure.allocationByteCount(bitmap);
+        }
+        return bitmap.getByteCount();
+    }
+
+    @RequiresApi(Build.VERSION_CODES.KITKAT)
+    private static class Reconfigure {
+
+        static void apply(Bitmap bitmap, int width, int height) {
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        static long allocationByteCount(Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    }
+}
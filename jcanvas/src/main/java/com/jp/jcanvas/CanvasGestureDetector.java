@@ -50,6 +50,17 @@ class CanvasGestureDetector {
     private Velocity mPivotVelocity;
     private Track mTrack;
 
+    // 计算过程中使用的临时对象
+    private Point mCurrentPivot;
+    private Velocity mVelocity;
+    private PointV mStation;
+
+    // 传递给回调的事件对象。由检测器持有并重复使用，只在回调期间有效
+    private Point mEventPoint;
+    private PointV mEventPointV;
+    private Offset mEventOffset;
+    private Scale mEventScale;
+
     CanvasGestureDetector(Context context, @NonNull CanvasGestureListener listener) {
         mHandler = new GestureHandler(this);
         mListener = listener;
@@ -67,6 +78,15 @@ class CanvasGestureDetector {
         mMoveLast = new Point();
         mPivotVelocity = new Velocity();
         mTrack = new Track();
+
+        mCurrentPivot = new Point();
+        mVelocity = new Velocity();
+        mStation = new PointV();
+
+        mEventPoint = new Point();
+        mEventPointV = new PointV();
+        mEventOffset = new Offset();
+        mEventScale = new Scale();
     }
 
     static class GestureHandler extends Handler {
@@ -117,12 +137,15 @@ class CanvasGestureDetector {
 
             {
                 final VelocityTracker velocityTracker = mVelocityTracker;
-                Velocity v = getVelocity(velocityTracker, event);
-                mTrack.departure(new PointV(x, y, v));
+                getVelocity(velocityTracker, event, mVelocity);
+                mStation.set(x, y, mVelocity);
+                mStation.time = event.getEventTime();
+                mTrack.departure(mStation);
                 mLast.set(x, y);
             }
 
-            handled = mListener.onActionDown(new Point(mDown));
+            mEventPoint.set(mDown);
+            handled = mListener.onActionDown(mEventPoint);
             mHandler.sendEmptyMessageDelayed(START_DRAW, TAP_TIMEOUT);
             break;
 
@@ -136,7 +159,7 @@ class CanvasGestureDetector {
                     boolean shouldCallListener = !mIsScaling;
                     mIsMoving = false;
                     mIsScaling = true;
-                    mPivot.set(getPivot(event));
+                    getPivot(event, mPivot);
                     mSpanLast = getSpan(event);
                     if (shouldCallListener) {
                         mListener.onScaleStart(mPivot);
@@ -157,37 +180,41 @@ class CanvasGestureDetector {
 
                             // scale end and move start
                             final VelocityTracker velocityTracker = mVelocityTracker;
-                            Velocity v = getVelocity(velocityTracker, event);
-                            mListener.onScaleEnd(new Point(mPivot));
-                            handled = mListener.onMove(new PointV(x, y, v),
-                                    new Offset(x - mMoveLast.x, y - mMoveLast.y));
+                            getVelocity(velocityTracker, event, mVelocity);
+                            mEventPoint.set(mPivot);
+                            mListener.onScaleEnd(mEventPoint);
+                            mEventPointV.set(x, y, mVelocity, event.getEventTime());
+                            mEventOffset.set(x - mMoveLast.x, y - mMoveLast.y);
+                            handled = mListener.onMove(mEventPointV, mEventOffset);
                             mMoveLast.set(x, y);
                         }
 
                     } else {
                         // scale
-                        final Point currentPivot = getPivot(event);
+                        final Point currentPivot = mCurrentPivot;
+                        getPivot(event, currentPivot);
                         final float span = getSpan(event);
-                        final Offset offset = new Offset(currentPivot.x - mPivot.x,
-                                currentPivot.y - mPivot.y);
+                        mEventOffset.set(currentPivot.x - mPivot.x, currentPivot.y - mPivot.y);
                         // 计算控制点的速率
                         final VelocityTracker velocityTracker = mVelocityTracker;
-                        Velocity vP = getVelocity(velocityTracker, event);
+                        getVelocity(velocityTracker, event, mVelocity);
 
-                        final Scale scale = new Scale(span / mSpanLast,
-                                new PointV(currentPivot.x, currentPivot.y, vP));
-                        handled = mListener.onScale(scale, offset);
+                        mEventPointV.set(currentPivot.x, currentPivot.y, mVelocity,
+                                event.getEventTime());
+                        mEventScale.set(span / mSpanLast, mEventPointV);
+                        handled = mListener.onScale(mEventScale, mEventOffset);
 
                         mPivot.set(currentPivot);
                         mSpanLast = span;
-                        mPivotVelocity.set(vP);
+                        mPivotVelocity.set(mVelocity);
                     }
 
                 } else if (mIsMoving) {
                     final VelocityTracker velocityTracker = mVelocityTracker;
-                    Velocity v = getVelocity(velocityTracker, event);
-                    handled = mListener.onMove(new PointV(x, y, v),
-                            new Offset(x - mMoveLast.x, y - mMoveLast.y));
+                    getVelocity(velocityTracker, event, mVelocity);
+                    mEventPointV.set(x, y, mVelocity, event.getEventTime());
+                    mEventOffset.set(x - mMoveLast.x, y - mMoveLast.y);
+                    handled = mListener.onMove(mEventPointV, mEventOffset);
                     mMoveLast.set(x, y);
 
                 } else if (mIsFirstPointerTouching) {
@@ -197,11 +224,24 @@ class CanvasGestureDetector {
                     float x1 = event.getX(pointerIndex);
                     float y1 = event.getY(pointerIndex);
                     final VelocityTracker velocityTracker = mVelocityTracker;
-                    Velocity v = getVelocity(velocityTracker, event);
-                    mTrack.addStation(new PointV(x1, y1, v));
+                    getVelocity(velocityTracker, event, mVelocity);
+
+                    // 系统会将两帧之间的多个采样合并到一个事件中，先追加历史采样，再追加当前采样。
+                    // 所有采样追加完成后只回调一次。历史采样没有单独的速率，使用事件的速率
+                    final int historySize = event.getHistorySize();
+                    for (int h = 0; h < historySize; h++) {
+                        mStation.set(event.getHistoricalX(pointerIndex, h),
+                                event.getHistoricalY(pointerIndex, h), mVelocity);
+                        mStation.time = event.getHistoricalEventTime(h);
+                        mTrack.addStation(mStation);
+                    }
+                    mStation.set(x1, y1, mVelocity);
+                    mStation.time = event.getEventTime();
+                    mTrack.addStation(mStation);
+                    mEventPointV.set(mStation);
 
                     if (mIsDrawing) {
-                        handled = mListener.onDrawPath(new PointV(x1, y1, v), new Track(mTrack));
+                        handled = mListener.onDrawPath(mEventPointV, mTrack);
 
                     } else {
                         // 判断是否应该进入 mIsDrawing 状态
@@ -212,8 +252,7 @@ class CanvasGestureDetector {
                         if (mTouchSlop < fingerSpan) {
                             mHandler.removeMessages(START_DRAW);
                             mIsDrawing = true;
-                            handled = mListener.onDrawPath(
-                                    new PointV(x1, y1, v), new Track(mTrack));
+                            handled = mListener.onDrawPath(mEventPointV, mTrack);
                         }
                     }
 
@@ -230,11 +269,11 @@ class CanvasGestureDetector {
                         // 如果是缩放状态且抬起后只剩一个触摸点
                         // 准备进入移动状态
                         mHandler.sendEmptyMessageDelayed(START_MOVE, TAP_TIMEOUT);
-                        mMoveLast.set(getPivot(event));
+                        getPivot(event, mMoveLast);
 
                     } else {
                         // 更新控制点
-                        mPivot.set(getPivot(event));
+                        getPivot(event, mPivot);
                         mSpanLast = getSpan(event);
                     }
                 }
@@ -248,8 +287,8 @@ class CanvasGestureDetector {
                         && (!mIsDrawing && !mIsScaling && !mIsMoving)) {
                     mIsDrawing = true;
                     int pointerIndex = event.findPointerIndex(mFirstPointerId);
-                    handled = mListener.onSingleTapUp(
-                            new Point(event.getX(pointerIndex), event.getY(pointerIndex)));
+                    mEventPoint.set(event.getX(pointerIndex), event.getY(pointerIndex));
+                    handled = mListener.onSingleTapUp(mEventPoint);
                 }
 
                 mTrack.reset();
@@ -257,14 +296,16 @@ class CanvasGestureDetector {
                 mFirstPointerId = -1;
 
                 if (mIsScaling) {
-                    mListener.onScaleEnd(new Point(mPivot));
+                    mEventPoint.set(mPivot);
+                    mListener.onScaleEnd(mEventPoint);
                 }
 
                 // 计算速度，判断是否需要惯性滑动
-                Velocity v = new Velocity();
+                Velocity v = mVelocity;
+                v.set(0f, 0f);
                 if (mIsMoving) {
                     final VelocityTracker velocityTracker = mVelocityTracker;
-                    v.set(getVelocity(velocityTracker, event));
+                    getVelocity(velocityTracker, event, v);
 
                 } else if (mIsScaling) {
                     v.set(mPivotVelocity);
@@ -273,7 +314,8 @@ class CanvasGestureDetector {
                 boolean fling = (Math.abs(v.x) > mMinFlingVelocity)
                         || (Math.abs(v.y) > mMinFlingVelocity);
                 fling &= mIsScaling || mIsMoving;
-                handled |= mListener.onActionUp(new PointV(x, y, v), fling);
+                mEventPointV.set(x, y, v, event.getEventTime());
+                handled |= mListener.onActionUp(mEventPointV, fling);
 
                 if (mVelocityTracker != null) {
                     mVelocityTracker.recycle();
@@ -304,9 +346,10 @@ class CanvasGestureDetector {
         mIsDrawing = false;
         mIsScaling = false;
         mIsMoving = false;
+        mListener.onCancel();
     }
 
-    private Point getPivot(MotionEvent event) {
+    private void getPivot(MotionEvent event, Point out) {
         final boolean pointerUp = MotionEvent.ACTION_POINTER_UP == event.getActionMasked();
         final int skipIndex = pointerUp ? event.getActionIndex() : -1;
 
@@ -326,7 +369,7 @@ class CanvasGestureDetector {
         final float pivotX = sumX / div;
         final float pivotY = sumY / div;
 
-        return new Point(pivotX, pivotY);
+        out.set(pivotX, pivotY);
     }
 
     private float getSpan(MotionEvent event) {
@@ -373,7 +416,7 @@ class CanvasGestureDetector {
         return (float) Math.hypot(spanX, spanY);
     }
 
-    private Velocity getVelocity(VelocityTracker tracker, MotionEvent event) {
+    private void getVelocity(VelocityTracker tracker, MotionEvent event, Velocity out) {
         final boolean pointerUp = MotionEvent.ACTION_POINTER_UP == event.getActionMasked();
         final int skipIndex = pointerUp ? event.getActionIndex() : -1;
 
@@ -395,14 +438,25 @@ class CanvasGestureDetector {
         final float vX = sumVX / div;
         final float vY = sumVY / div;
 
-        return new Velocity(vX, vY);
+        out.set(vX, vY);
     }
 
+    /**
+     * 手势回调。为避免每个触摸事件都创建对象，传递给回调的参数由检测器持有并重复使用，
+     * 只在回调期间有效。需要保存时应复制其中的值
+     */
     public interface CanvasGestureListener {
         boolean onActionDown(Point down);
 
         boolean onSingleTapUp(Point focus);
 
+        /**
+         * 绘制路径
+         *
+         * @param focus 最新的触摸点
+         * @param track 检测器持有的路径，只在回调期间有效，不能修改。站点只会在尾部追加
+         * @return 是否处理
+         */
         boolean onDrawPath(PointV focus, final Track track);
 
         void onScaleStart(Point pivot);
@@ -414,5 +468,10 @@ class CanvasGestureDetector {
         boolean onMove(PointV focus, Offset offset);
 
         boolean onActionUp(PointV focus, boolean fling);
+
+        /**
+         * 手势被取消。检测器的路径已被清空，之后的 {@link #onDrawPath(PointV, Track)} 属于新的路径
+         */
+        void onCancel();
     }
 }
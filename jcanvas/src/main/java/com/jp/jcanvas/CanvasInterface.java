@@ -1,5 +1,7 @@
 package com.jp.jcanvas;
 
+import java.io.File;
+
 /**
  *
  */
@@ -30,4 +32,31 @@ public class CanvasInterface {
          */
         void onScaleChangeEnd(float endScale);
     }
+
+    /**
+     * 导出监听器。所有回调都在主线程中调用
+     */
+    public interface OnExportListener {
+        /**
+         * 导出进度变化
+         *
+         * @param percent 已完成的百分比，0 ~ 100
+         */
+        void onExportProgress(int percent);
+
+        /**
+         * 导出完成
+         *
+         * @param file 导出的文件
+         */
+        void onExportComplete(File file);
+
+        /**
+         * 导出失败，已写入的文件会被删除
+         *
+         * @param file 导出的文件
+         * @param e    失败原因
+         */
+        void onExportFailed(File file, Exception e);
+    }
 }
@@ -0,0 +1,203 @@
+package com.jp.jcanvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * 缓存快照。
+ * <p>
+ * 每提交 interval 条路径保存一次缓存的快照，记录快照对应的撤销栈深度。
+ * 重建缓存时从不高于目标深度的最近快照恢复，最多只需重绘 interval 条路径，而不需要重绘整个撤销栈。
+ * 快照占用的内存不超过预算，超出时丢弃最早的快照。
+ * </p>
+ */
+class CheckpointStore {
+
+    private int mInterval;
+    private long mBudget;
+
+    // 按深度升序排列
+    private final LinkedList<Checkpoint> mCheckpoints;
+
+    private final Canvas mCanvas;
+    private final Paint mPaint;
+
+    CheckpointStore(int interval, long budget) {
+        mInterval = Math.max(1, interval);
+        mBudget = budget;
+        mCheckpoints = new LinkedList<>();
+        mCanvas = new Canvas();
+        mPaint = new Paint();
+        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    void setInterval(int interval) {
+        mInterval = Math.max(1, interval);
+    }
+
+    int getInterval() {
+        return mInterval;
+    }
+
+    void setBudget(long budget) {
+        mBudget = budget;
+        trim(0L, null);
+    }
+
+    /**
+     * 在提交路径后调用。深度为 interval 的整数倍时保存快照
+     *
+     * @param depth 提交后撤销栈的深度
+     * @param cache 提交后的缓存
+     */
+    void onCommit(int depth, Bitmap cache) {
+        if (0 == depth || 0 != depth % mInterval) {
+            return;
+        }
+
+        if (!mCheckpoints.isEmpty() && mCheckpoints.getLast().depth >= depth) {
+            // 重做时快照可能仍然有效
+            return;
+        }
+
+        long size = sizeOf(cache);
+        if (size > mBudget) {
+            return;
+        }
+
+        // 复用被丢弃的快照位图，避免每次保存都分配一整张位图
+        Bitmap bitmap = trim(size, cache);
+        if (null == bitmap) {
+            bitmap = Bitmap.createBitmap(
+                    cache.getWidth(), cache.getHeight(), Bitmap.Config.ARGB_8888);
+        }
+        mCanvas.setBitmap(bitmap);
+        mCanvas.drawBitmap(cache, 0, 0, mPaint);
+        mCanvas.setBitmap(null);
+        mCheckpoints.addLast(new Checkpoint(depth, bitmap));
+    }
+
+    /**
+     * 将缓存恢复到不高于 depth 的最近的快照
+     *
+     * @param depth  目标深度
+     * @param canvas 缓存的画布
+     * @return 恢复后缓存对应的深度。没有可用快照时清空缓存并返回 0
+     */
+    int restore(int depth, Canvas canvas) {
+        Checkpoint nearest = find(depth);
+        if (null == nearest) {
+            canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            return 0;
+        }
+
+        canvas.drawBitmap(nearest.bitmap, 0, 0, mPaint);
+        return nearest.depth;
+    }
+
+    /**
+     * 获取不高于 depth 的最近的快照对应的深度
+     *
+     * @param depth 目标深度
+     * @return 快照的深度，没有可用快照时返回 0
+     */
+    int getBaseDepth(int depth) {
+        Checkpoint nearest = find(depth);
+        return null == nearest ? 0 : nearest.depth;
+    }
+
+    private Checkpoint find(int depth) {
+        Checkpoint nearest = null;
+        for (Checkpoint c : mCheckpoints) {
+            if (c.depth > depth) {
+                break;
+            }
+            nearest = c;
+        }
+        return nearest;
+    }
+
+    /**
+     * 丢弃深度不低于 depth 的快照。提交新路径使重做栈失效时调用
+     *
+     * @param depth 深度
+     */
+    void invalidateFrom(int depth) {
+        Iterator<Checkpoint> it = mCheckpoints.descendingIterator();
+        while (it.hasNext()) {
+            Checkpoint c = it.next();
+            if (c.depth < depth) {
+                break;
+            }
+            it.remove();
+            c.bitmap.recycle();
+        }
+    }
+
+    /**
+     * 丢弃所有快照
+     */
+    void clear() {
+        for (Checkpoint c : mCheckpoints) {
+            c.bitmap.recycle();
+        }
+        mCheckpoints.clear();
+    }
+
+    /**
+     * 获取快照占用的内存
+     *
+     * @return 字节数
+     */
+    long getMemoryUsage() {
+        long size = 0L;
+        for (Checkpoint c : mCheckpoints) {
+            size += sizeOf(c.bitmap);
+        }
+        return size;
+    }
+
+    /**
+     * 丢弃最早的快照，直到再增加 extra 字节也不会超出预算
+     *
+     * @param extra 即将增加的字节数
+     * @param like  需要复用的位图的尺寸参照，为 null 时不复用
+     * @return 被丢弃且尺寸与 like 相同的一张位图，没有时返回 null
+     */
+    private Bitmap trim(long extra, Bitmap like) {
+        Bitmap reuse = null;
+        long usage = getMemoryUsage();
+        while (!mCheckpoints.isEmpty() && usage + extra > mBudget) {
+            Checkpoint c = mCheckpoints.removeFirst();
+            usage -= sizeOf(c.bitmap);
+
+            if (null == reuse && null != like && c.bitmap.getWidth() == like.getWidth()
+                    && c.bitmap.getHeight() == like.getHeight()) {
+                reuse = c.bitmap;
+            } else {
+                c.bitmap.recycle();
+            }
+        }
+        return reuse;
+    }
+
+    private static long sizeOf(Bitmap bitmap) {
+        return 4L * bitmap.getWidth() * bitmap.getHeight();
+    }
+
+    private static class Checkpoint {
+        final int depth;
+        final Bitmap bitmap;
+
+        Checkpoint(int depth, Bitmap bitmap) {
+            this.depth = depth;
+            this.bitmap = bitmap;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.jp.jcanvas;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 帧调度器。
+ * <p>
+ * 绘制在独立的绘制线程上进行。没有绘制请求时，绘制线程挂起在 Looper 中，不占用 CPU 。
+ * 收到绘制请求后，通过 Choreographer 在下一个垂直同步信号到来时回调，使帧与屏幕刷新对齐。
+ * API 16 以下没有 Choreographer ，退化为按帧间隔延时回调。
+ * 同一帧内的多次请求会被合并。
+ * </p>
+ */
+class FrameScheduler {
+
+    private static final int MSG_SCHEDULE = 1;
+    private static final int MSG_FRAME = 2;
+
+    private final FrameCallback mCallback;
+    private final long mFrameTime;
+    private final AtomicBoolean mScheduled;
+
+    private HandlerThread mThread;
+    private volatile Handler mHandler;
+    private VsyncSource mVsync;
+
+    /**
+     * @param callback  帧回调
+     * @param frameTime 无法使用垂直同步时的帧间隔，单位为毫秒
+     */
+    FrameScheduler(@NonNull FrameCallback callback, long frameTime) {
+        mCallback = callback;
+        mFrameTime = frameTime;
+        mScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * 启动绘制线程
+     */
+    void start() {
+        if (null != mThread) {
+            return;
+        }
+
+        mScheduled.set(false);
+        mThread = new HandlerThread("JCanvas-Render", Process.THREAD_PRIORITY_DISPLAY);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper(), this::handleMessage);
+    }
+
+    /**
+     * 停止绘制线程，并等待正在绘制的帧结束。
+     * 返回后不会再有帧回调。
+     */
+    void stop() {
+        if (null == mThread) {
+            return;
+        }
+
+        mHandler = null;
+        mThread.quit();
+        try {
+            mThread.join();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mThread = null;
+        mVsync = null;
+    }
+
+    /**
+     * 请求绘制一帧。可以在任意线程调用
+     */
+    void requestFrame() {
+        Handler handler = mHandler;
+        if (null != handler && mScheduled.compareAndSet(false, true)) {
+            handler.sendEmptyMessage(MSG_SCHEDULE);
+        }
+    }
+
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_SCHEDULE:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    if (null == mVsync) {
+                        // Choreographer 与线程绑定，需要在绘制线程上获取
+                        mVsync = new VsyncSource(this);
+                    }
+                    mVsync.post();
+
+                } else {
+                    Handler handler = mHandler;
+                    if (null != handler) {
+                        handler.sendEmptyMessageDelayed(MSG_FRAME, mFrameTime);
+                    }
+                }
+                return true;
+
+            case MSG_FRAME:
+                dispatchFrame(System.nanoTime());
+                return true;
+
+            default:
+                Log.w(this.getClass().getSimpleName(), "Unknown message " + msg);
+                return false;
+        }
+    }
+
+    private void dispatchFrame(long frameTimeNanos) {
+        // 先清除标记，绘制过程中产生的请求会调度到下一帧
+        mScheduled.set(false);
+        mCallback.onFrame(frameTimeNanos);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class VsyncSource implements Choreographer.FrameCallback {
+        private final FrameScheduler mScheduler;
+        private final Choreographer mChoreographer;
+
+        VsyncSource(FrameScheduler scheduler) {
+            mScheduler = scheduler;
+            mChoreographer = Choreographer.getInstance();
+        }
+
+        void post() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mScheduler.dispatchFrame(frameTimeNanos);
+        }
+    }
+
+    interface FrameCallback {
+        /**
+         * 绘制一帧。在绘制线程上回调
+         *
+         * @param frameTimeNanos 帧开始的时间，单位为纳秒
+         */
+        void onFrame(long frameTimeNanos);
+    }
+}
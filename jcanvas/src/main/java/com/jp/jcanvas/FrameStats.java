@@ -0,0 +1,139 @@
+package com.jp.jcanvas;
+
+import java.util.Locale;
+
+/**
+ * 帧耗时统计数据的快照，通过 {@link JCanvas#getFrameStats()} 获取。
+ * <p>
+ * 按帧开始时画布的状态（{@link JCanvas#STATUS_IDLE} 等）分别统计。
+ * 耗时为绘制线程处理一帧的时间，单位为毫秒。百分位数由直方图得到，精度为直方图桶的宽度 0.25ms ，
+ * 超过 64ms 的帧计入最后一个桶，此时以最大耗时为准。
+ * </p>
+ */
+public class FrameStats {
+
+    private final long[][] mHistogram;
+    private final long[] mJank;
+    private final long[] mMax;
+    private final long mJankNanos;
+
+    FrameStats(long[][] histogram, long[] jank, long[] max, long jankNanos) {
+        mHistogram = histogram;
+        mJank = jank;
+        mMax = max;
+        mJankNanos = jankNanos;
+    }
+
+    /**
+     * 获取帧数
+     *
+     * @param status 状态
+     * @return 帧数
+     */
+    public long getFrameCount(int status) {
+        if (!isValid(status)) {
+            return 0L;
+        }
+
+        long count = 0L;
+        for (long c : mHistogram[status]) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * 获取耗时的百分位数
+     *
+     * @param status     状态
+     * @param percentile 百分位，0 ~ 100
+     * @return 耗时，没有记录时返回 0
+     */
+    public float getPercentile(int status, float percentile) {
+        long count = getFrameCount(status);
+        if (0L == count) {
+            return 0f;
+        }
+
+        long rank = (long) Math.ceil(count * Math.max(0f, Math.min(100f, percentile)) / 100f);
+        rank = Math.max(1L, rank);
+        long[] histogram = mHistogram[status];
+        long seen = 0L;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                if (histogram.length - 1 == i) {
+                    return toMillis(mMax[status]);
+                }
+                // 取桶的上边界，不超过最大耗时
+                return Math.min(toMillis((i + 1) * FrameStatsRecorder.BUCKET_NANOS),
+                        toMillis(mMax[status]));
+            }
+        }
+        return toMillis(mMax[status]);
+    }
+
+    public float getP50(int status) {
+        return getPercentile(status, 50f);
+    }
+
+    public float getP90(int status) {
+        return getPercentile(status, 90f);
+    }
+
+    public float getP99(int status) {
+        return getPercentile(status, 99f);
+    }
+
+    /**
+     * 获取卡顿的帧数，即耗时超过一个帧间隔的帧数
+     *
+     * @param status 状态
+     * @return 帧数
+     */
+    public long getJankCount(int status) {
+        return isValid(status) ? mJank[status] : 0L;
+    }
+
+    /**
+     * 获取最大耗时
+     *
+     * @param status 状态
+     * @return 耗时
+     */
+    public float getMaxFrameTime(int status) {
+        return isValid(status) ? toMillis(mMax[status]) : 0f;
+    }
+
+    /**
+     * 获取判定卡顿的耗时
+     *
+     * @return 耗时
+     */
+    public float getJankThreshold() {
+        return toMillis(mJankNanos);
+    }
+
+    private boolean isValid(int status) {
+        return status >= 0 && status < mHistogram.length;
+    }
+
+    private static float toMillis(long nanos) {
+        return nanos / 1_000_000f;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FrameStats{");
+        for (int i = 0; i < mHistogram.length; i++) {
+            long count = getFrameCount(i);
+            if (0L == count) {
+                continue;
+            }
+            sb.append(String.format(Locale.US,
+                    " [status %d: frames=%d, p50=%.2fms, p90=%.2fms, p99=%.2fms, jank=%d, max=%.2fms]",
+                    i, count, getP50(i), getP90(i), getP99(i), mJank[i], toMillis(mMax[i])));
+        }
+        return sb.append(" }").toString();
+    }
+}
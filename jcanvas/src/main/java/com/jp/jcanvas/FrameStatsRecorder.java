@@ -0,0 +1,87 @@
+package com.jp.jcanvas;
+
+import java.util.Arrays;
+
+/**
+ * 帧耗时的统计。
+ * <p>
+ * 按帧开始时画布的状态分别记录到固定大小的直方图中，每个桶的宽度为 BUCKET_NANOS ，
+ * 超出范围的帧记录在最后一个桶中。记录时不分配内存，可以在渲染线程的每一帧调用。
+ * </p>
+ * <p>
+ * 线程安全。
+ * </p>
+ */
+class FrameStatsRecorder {
+
+    /**
+     * 直方图每个桶的宽度，单位为纳秒
+     */
+    static final long BUCKET_NANOS = 250_000L;
+
+    /**
+     * 直方图的桶数，覆盖 0 ~ 64ms
+     */
+    static final int BUCKETS = 256;
+
+    private final int mStates;
+    private final long mJankNanos;
+    private final long[][] mHistogram;
+    private final long[] mJank;
+    private final long[] mMax;
+
+    /**
+     * @param states    状态的数量，状态从 0 开始编号
+     * @param jankNanos 超过该耗时的帧记为卡顿，单位为纳秒
+     */
+    FrameStatsRecorder(int states, long jankNanos) {
+        mStates = states;
+        mJankNanos = jankNanos;
+        mHistogram = new long[states][BUCKETS];
+        mJank = new long[states];
+        mMax = new long[states];
+    }
+
+    /**
+     * 记录一帧
+     *
+     * @param state 帧开始时的状态
+     * @param nanos 帧耗时，单位为纳秒
+     */
+    synchronized void record(int state, long nanos) {
+        if (state < 0 || state >= mStates) {
+            return;
+        }
+
+        int bucket = (int) Math.min(BUCKETS - 1, Math.max(0L, nanos) / BUCKET_NANOS);
+        mHistogram[state][bucket]++;
+        if (nanos > mJankNanos) {
+            mJank[state]++;
+        }
+        mMax[state] = Math.max(mMax[state], nanos);
+    }
+
+    /**
+     * 获取当前统计数据的快照
+     *
+     * @return 快照
+     */
+    synchronized FrameStats snapshot() {
+        long[][] histogram = new long[mStates][];
+        for (int i = 0; i < mStates; i++) {
+            histogram[i] = mHistogram[i].clone();
+        }
+        return new FrameStats(histogram, mJank.clone(), mMax.clone(), mJankNanos);
+    }
+
+    /**
+     * 清空统计数据
+     */
+    synchronized void reset() {
+        for (int i = 0; i < mStates; i++) {
+            Arrays.fill(mHistogram[i], 0L);
+            mJank[i] = 0L;
+            mMax[i] = 0L;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.jp.jcanvas;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.jp.jcanvas.entity.HistoryData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 撤销栈与重做栈。
+ * <p>
+ * 两个栈中最新的记录都在最前。历史记录占用的内存超出预算时，在后台线程将最冷的记录
+ * （撤销栈底部与重做栈底部的记录）写入应用私有的溢出文件并从内存中释放，
+ * 撤销、重做或重建缓存需要时再从文件读回。已写入的记录再次释放时无需重复写入。
+ * 栈顶的少量记录始终保留在内存中。
+ * </p>
+ * <p>
+ * 溢出文件只追加写入，被丢弃的记录（如提交时清空的重做栈）留下无用的数据。
+ * 无用的数据超过一半且超过 {@link #COMPACT_THRESHOLD} 时，在后台线程将仍在栈中的记录
+ * 复制到新的溢出文件，再删除原先的文件。
+ * </p>
+ * <p>
+ * 重建缓存与导出在锁外读取记录，期间记录可能被清空或丢弃而不再被复制到新文件。
+ * 读取期间通过 {@link #beginRead()} 与 {@link #endRead()} 登记，不再使用的溢出文件推迟到读取结束后删除。
+ * </p>
+ * <p>
+ * 撤销栈中的路径同时登记在空间索引中，可以查询某个区域内的路径。
+ * </p>
+ * <p>
+ * 修改栈的方法需要在持有画布的锁时调用。
+ * </p>
+ */
+class HistoryStack {
+
+    /**
+     * 每个栈顶部始终保留在内存中的记录数
+     */
+    private static final int HOT_ENTRIES = 4;
+
+    /**
+     * 整理溢出文件的最小无用数据量
+     */
+    private static final long COMPACT_THRESHOLD = 1024L * 1024L;
+
+    private final LinkedList<HistoryData> mUndo;
+    private final LinkedList<HistoryData> mRedo;
+    private final StrokeIndex mIndex;
+    private final File mSpillDir;
+    // 只在后台线程中替换
+    private volatile SpillFile mSpill;
+    // 整理失败时仍有记录使用的旧溢出文件
+    private final List<SpillFile> mRetired;
+    // 不再使用、等待读取结束后删除的溢出文件
+    private final List<SpillFile> mDiscarded;
+    // 正在锁外读取记录的数量
+    private int mReaders;
+    private final Executor mExecutor;
+    private final AtomicBoolean mTrimScheduled;
+    private volatile long mBudget;
+
+    /**
+     * @param spillDir 溢出文件所在的目录
+     * @param executor 写入溢出文件使用的后台线程
+     * @param budget   内存预算
+     */
+    HistoryStack(@NonNull File spillDir, @NonNull Executor executor, long budget) {
+        mUndo = new LinkedList<>();
+        mRedo = new LinkedList<>();
+        mIndex = new StrokeIndex();
+        mSpillDir = spillDir;
+        mSpill = new SpillFile(spillDir);
+        mRetired = new ArrayList<>();
+        mDiscarded = new ArrayList<>();
+        mReaders = 0;
+        mExecutor = executor;
+        mTrimScheduled = new AtomicBoolean(false);
+        mBudget = budget;
+        // 在写入任何溢出文件之前清理之前的进程留下的文件
+        executor.execute(() -> SpillFile.deleteStale(spillDir));
+    }
+
+    /**
+     * 提交新的记录，清空重做栈
+     *
+     * @param data 记录
+     */
+    synchronized void commit(@NonNull HistoryData data) {
+        mIndex.add(data, mUndo.size());
+        mUndo.addFirst(data);
+        mRedo.clear();
+        scheduleTrim();
+    }
+
+    /**
+     * 将撤销栈顶的记录移至重做栈
+     *
+     * @return 被撤销的记录，撤销栈为空时返回 null
+     */
+    synchronized HistoryData undo() {
+        if (mUndo.isEmpty()) {
+            return null;
+        }
+
+        HistoryData data = mUndo.removeFirst();
+        mIndex.remove(data);
+        mRedo.addFirst(data);
+        scheduleTrim();
+        return data;
+    }
+
+    /**
+     * 将重做栈顶的记录移至撤销栈
+     *
+     * @return 被重做的记录，重做栈为空时返回 null
+     */
+    synchronized HistoryData redo() {
+        if (mRedo.isEmpty()) {
+            return null;
+        }
+
+        HistoryData data = mRedo.removeFirst();
+        mIndex.add(data, mUndo.size());
+        mUndo.addFirst(data);
+        scheduleTrim();
+        return data;
+    }
+
+    /**
+     * 获取撤销栈顶的记录
+     *
+     * @return 记录，撤销栈为空时返回 null
+     */
+    synchronized HistoryData peekUndo() {
+        return mUndo.peekFirst();
+    }
+
+    /**
+     * 获取撤销栈的深度
+     *
+     * @return 深度
+     */
+    synchronized int getUndoCount() {
+        return mUndo.size();
+    }
+
+    /**
+     * 获取重做栈的深度
+     *
+     * @return 深度
+     */
+    synchronized int getRedoCount() {
+        return mRedo.size();
+    }
+
+    /**
+     * 获取撤销栈的迭代器。使用期间需要持有画布的锁
+     *
+     * @param index 起始位置
+     * @return 迭代器
+     */
+    synchronized ListIterator<HistoryData> undoIterator(int index) {
+        return mUndo.listIterator(index);
+    }
+
+    /**
+     * 通过空间索引查询撤销栈中包围盒与 rect 相交的路径
+     *
+     * @param rect 区域（文档坐标系）
+     * @param from 只查询位置不低于 from 的路径，位置从栈底开始计数
+     * @param out  按绘制顺序写入结果
+     * @return 结果的数量
+     */
+    synchronized int query(RectF rect, int from, List<HistoryData> out) {
+        return mIndex.query(rect, from, out);
+    }
+
+    /**
+     * 清空两个栈，删除溢出文件。有读取者时推迟到读取结束后删除
+     */
+    synchronized void clear() {
+        mUndo.clear();
+        mRedo.clear();
+        mIndex.clear();
+        discard(mSpill);
+        mSpill = new SpillFile(mSpillDir);
+        for (SpillFile file : mRetired) {
+            discard(file);
+        }
+        mRetired.clear();
+    }
+
+    /**
+     * 开始在锁外读取记录。读取结束前不会删除任何溢出文件，需要与 {@link #endRead()} 成对调用
+     */
+    synchronized void beginRead() {
+        mReaders++;
+    }
+
+    /**
+     * 结束读取。最后一个读取者结束时删除等待删除的溢出文件
+     */
+    void endRead() {
+        List<SpillFile> files;
+        synchronized (this) {
+            if (--mReaders > 0 || mDiscarded.isEmpty()) {
+                return;
+            }
+            files = new ArrayList<>(mDiscarded);
+            mDiscarded.clear();
+        }
+        for (SpillFile file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * 删除不再使用的溢出文件，有读取者时推迟删除。需要持有锁
+     */
+    private void discard(SpillFile file) {
+        if (mReaders > 0) {
+            mDiscarded.add(file);
+        } else {
+            file.delete();
+        }
+    }
+
+    /**
+     * 设置内存预算
+     *
+     * @param budget 字节数
+     */
+    void setBudget(long budget) {
+        mBudget = budget;
+        scheduleTrim();
+    }
+
+    /**
+     * 获取历史记录占用的内存
+     *
+     * @return 字节数
+     */
+    synchronized long getMemoryUsage() {
+        long size = 0L;
+        for (HistoryData data : mUndo) {
+            size += data.getByteCount();
+        }
+        for (HistoryData data : mRedo) {
+            size += data.getByteCount();
+        }
+        return size;
+    }
+
+    /**
+     * 获取溢出文件的大小
+     *
+     * @return 字节数
+     */
+    synchronized long getDiskUsage() {
+        long size = getStoredUsage();
+        for (SpillFile file : mDiscarded) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * 获取仍有记录使用的溢出文件的大小
+     *
+     * @return 字节数
+     */
+    private synchronized long getStoredUsage() {
+        long size = mSpill.length();
+        for (SpillFile file : mRetired) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private void scheduleTrim() {
+        if (mTrimScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(this::trim);
+        }
+    }
+
+    /**
+     * 释放最冷的记录，直到占用的内存不超过预算，之后检查是否需要整理溢出文件。在后台线程运行
+     */
+    private void trim() {
+        mTrimScheduled.set(false);
+        release();
+        compact();
+    }
+
+    /**
+     * 释放最冷的记录，直到占用的内存不超过预算
+     */
+    private void release() {
+        long usage;
+        List<HistoryData> candidates = new ArrayList<>();
+        synchronized (this) {
+            usage = getMemoryUsage();
+            if (usage <= mBudget) {
+                return;
+            }
+
+            // 从栈底开始，撤销栈优先
+            Iterator<HistoryData> it = mUndo.descendingIterator();
+            for (int i = mUndo.size(); i > HOT_ENTRIES && it.hasNext(); i--) {
+                candidates.add(it.next());
+            }
+            it = mRedo.descendingIterator();
+            for (int i = mRedo.size(); i > HOT_ENTRIES && it.hasNext(); i--) {
+                candidates.add(it.next());
+            }
+        }
+
+        try {
+            for (HistoryData data : candidates) {
+                if (usage <= mBudget) {
+                    break;
+                }
+                if (!data.isLoaded()) {
+                    continue;
+                }
+
+                long before = data.getByteCount();
+                if (!data.isStored()) {
+                    byte[] bytes = data.serialize();
+                    long offset = mSpill.append(bytes);
+                    data.setStored(mSpill, offset, bytes.length);
+                }
+                if (data.unload()) {
+                    usage -= before - data.getByteCount();
+                }
+            }
+
+        } catch (IOException e) {
+            Log.w(this.getClass().getSimpleName(), "spill history failed", e);
+        }
+    }
+
+    /**
+     * 无用的数据过多时，将栈中已写入的记录复制到新的溢出文件，删除原先的文件。
+     * 复制失败时已复制的记录使用新文件，其余的记录仍使用原先的文件，两个文件都保留，
+     * 下次整理时再复制剩余的记录
+     */
+    private void compact() {
+        SpillFile spill = mSpill;
+        List<HistoryData> stored = new ArrayList<>();
+        long live = 0L;
+        synchronized (this) {
+            for (HistoryData data : mUndo) {
+                live += addStored(data, stored);
+            }
+            for (HistoryData data : mRedo) {
+                live += addStored(data, stored);
+            }
+        }
+
+        long dead = getStoredUsage() - live;
+        if (dead < COMPACT_THRESHOLD || dead < live) {
+            return;
+        }
+
+        SpillFile next = new SpillFile(mSpillDir);
+        try {
+            for (HistoryData data : stored) {
+                data.relocate(next);
+            }
+
+        } catch (IOException e) {
+            Log.w(this.getClass().getSimpleName(), "compact history failed", e);
+            synchronized (this) {
+                mRetired.add(spill);
+                mSpill = next;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            mSpill = next;
+            discard(spill);
+            for (SpillFile file : mRetired) {
+                discard(file);
+            }
+            mRetired.clear();
+        }
+    }
+
+    private static int addStored(HistoryData data, List<HistoryData> out) {
+        int length = data.getStoredLength();
+        if (length > 0) {
+            out.add(data);
+        }
+        return length;
+    }
+}
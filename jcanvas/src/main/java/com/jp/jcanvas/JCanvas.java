@@ -9,12 +9,18 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -24,6 +30,7 @@ import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.Scroller;
 
 import com.jp.jcanvas.CanvasGestureDetector.CanvasGestureListener;
+import com.jp.jcanvas.CanvasInterface.OnExportListener;
 import com.jp.jcanvas.CanvasInterface.OnScaleChangeListener;
 import com.jp.jcanvas.brush.BaseBrush;
 import com.jp.jcanvas.brush.SimpleBrush;
@@ -32,17 +39,27 @@ import com.jp.jcanvas.entity.Offset;
 import com.jp.jcanvas.entity.Point;
 import com.jp.jcanvas.entity.PointV;
 import com.jp.jcanvas.entity.Scale;
+import com.jp.jcanvas.entity.TileDelta;
 import com.jp.jcanvas.entity.Track;
 import com.jp.jcanvas.entity.Velocity;
 
-import java.util.LinkedList;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.ListIterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  */
 public class JCanvas extends SurfaceView implements
-        SurfaceHolder.Callback, CanvasGestureListener, Runnable {
+        SurfaceHolder.Callback, CanvasGestureListener, FrameScheduler.FrameCallback {
 
     /**
      * 闲置状态。无触摸交互且无需更新视图。
@@ -75,10 +92,51 @@ public class JCanvas extends SurfaceView implements
     public static final int STATUS_DESTROYED = 5;
 
     /**
-     * 默认帧率
+     * 无法使用垂直同步时的默认帧率
      */
     private static final int FRAME_RATE = 60;
 
+    /**
+     * 默认每提交多少条路径保存一次缓存快照
+     */
+    private static final int CHECKPOINT_INTERVAL = 50;
+
+    /**
+     * 默认的路径预测时长，单位为毫秒。约为一帧
+     */
+    private static final int PREDICTION_HORIZON = 1000 / FRAME_RATE;
+
+    /**
+     * 默认的路径简化容差，单位为文档坐标系的像素
+     */
+    private static final float SIMPLIFY_TOLERANCE = 0.5f;
+
+    /**
+     * 撤销时局部重绘最多重绘的路径数量，超出时在后台重建整个缓存。
+     * 局部重绘在输入事件线程上持有锁进行，期间渲染线程被阻塞，只能承担很少的工作量
+     */
+    private static final int REGION_REDRAW_LIMIT = 8;
+
+    /**
+     * 撤销时局部重绘最多重绘的站点数量
+     */
+    private static final int REGION_REDRAW_STATIONS = 4096;
+
+    /**
+     * 帧耗时超过一个帧间隔记为卡顿，单位为纳秒
+     */
+    private static final long JANK_NANOS = 1_000_000_000L / FRAME_RATE;
+
+    /**
+     * 导出时每次读取的像素数上限
+     */
+    private static final int EXPORT_STRIP_PIXELS = 64 * 1024;
+
+    /**
+     * 导出文件的写入缓冲区大小
+     */
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private int mFrameTime;
     private float mMinScale;
     private float mMaxScale;
@@ -86,28 +144,96 @@ public class JCanvas extends SurfaceView implements
     private SurfaceHolder mHolder;
     private Canvas mCanvas;
     private Canvas mCacheCanvas;
-    private Canvas mWorkingCanvas;
+    private Canvas mStrokeCanvas;
 
     private BaseBrush mBrush;
     private Paint mPaint;
+    private Paint mFilterPaint;
     private Paint mPatternPaint;
-    private Track mTrack;
+    // 工作路径（文档坐标系）。输入线程追加站点，渲染线程不加锁读取；每条路径使用新的对象
+    private volatile Track mTrack;
 
     private Bitmap mCache;
-    private Bitmap mWorkingSpace;
+    // 缓存、后备缓冲区与图层的复用池
+    private BitmapPool mBitmapPool;
+    // 缓存的多级缩小副本，用于缩小显示
+    private MipPyramid mPyramid;
+    private Rect mLevelSrc;
+    private RectF mLevelDst;
+    private RectF mCacheBounds;
+    // 绘制质量策略。mFrameFilter 与 mFrameLevelBias 为本帧使用的画质，只在渲染线程使用
+    private volatile RenderPolicy mRenderPolicy;
+    private boolean mFrameFilter;
+    private int mFrameLevelBias;
+    private boolean mDegradedFrame;
+    // 后台重建缓存时使用的后备缓冲区，重建完成后与 mCache 交换。
+    // 只在重建期间持有，交换后原先的缓存放回复用池，下次重建时再申请
+    private Bitmap mBackBuffer;
+    private Canvas mBackCanvas;
+    // 工作路径的图层，只增量绘制新增的分段
+    private Bitmap mStrokeLayer;
+    private int mStrokeSections;
+    private RectF mStrokeBounds;
+    private Rect mStrokeClip;
+    // 路径图层已绘制的范围，只在渲染线程使用
+    private Rect mStrokeViewport;
+    // 工作路径的预测尾部。mPredictBounds 为上一帧尾部的区域（文档坐标系，包含笔刷宽度）
+    private StrokePredictor mPredictor;
+    private boolean mPredicted;
+    private RectF mPredictBounds;
+    // 尾部临时绘制在路径图层上，合成后从备份恢复。只在渲染线程使用
+    private Bitmap mTailBackup;
+    private Canvas mTailCanvas;
+    private Paint mCopyPaint;
+    private Rect mTailRect;
+    private Rect mTailBackupRect;
+    // 提交路径时的简化容差
+    private float mSimplifyTolerance;
     private Drawable mBG;
+    // 预先合成的背景图层（屏幕坐标系），只在渲染线程使用。
+    // 变换、尺寸或背景变化后失效，mBackgroundGeneration 在背景变化时递增
+    private Bitmap mBackgroundLayer;
+    private Canvas mBackgroundCanvas;
+    private Matrix mBackgroundMatrix;
+    private Rect mBackgroundBounds;
+    private int mBackgroundLayerGeneration;
+    private volatile int mBackgroundGeneration;
 
     private int mHeight;
     private int mWidth;
     private float mScale;
     private Offset mOffset;
     private Matrix mMatrix;
+    // 屏幕坐标系到文档坐标系的变换，只在主线程使用
+    private Matrix mInverse;
     private RectF mOrin;
     private RectF mTrans;
 
+    // 脏区域。mDirtyArea 为文档坐标系下自上一帧以来发生变化的区域
+    private boolean mDirtyRegionEnabled;
+    private boolean mDirtyAll;
+    private int mDirtySections;
+    private RectF mDirtyArea;
+    private RectF mFrameArea;
+    private RectF mSectionBounds;
+    private Rect mDirtyRect;
+    private Matrix mLastMatrix;
+
+    // 视口与本帧需要合成的区域（文档坐标系），只在渲染线程使用
+    private Matrix mViewInverse;
+    private RectF mViewport;
+    private Rect mViewportClip;
+    private boolean mBlitVisible;
+    private Rect mBlitSrc;
+    private RectF mBlitDst;
+
     private volatile int mStatus;
-    private boolean mNeedInvalidate;
+    // 缓存与撤销栈不一致，需要重建。重建期间继续显示原有的缓存
     private boolean mNeedFullInvalidate;
+    private boolean mRebuilding;
+    private volatile int mRebuildGeneration;
+    private FrameScheduler mScheduler;
+    private FrameStatsRecorder mFrameStats;
 
     private AccelerateDecelerateInterpolator mInterpolator;
     private Scroller mScroller;
@@ -115,9 +241,17 @@ public class JCanvas extends SurfaceView implements
     private boolean mInteracting;
 
     // 撤销栈与重做栈
-    private LinkedList<HistoryData> mUndoStack;
-    private LinkedList<HistoryData> mRedoStack;
-    private LinkedList<HistoryData> mCacheStack;
+    private HistoryStack mHistory;
+    private CheckpointStore mCheckpoints;
+    private RectF mDeltaBounds;
+    private ArrayList<HistoryData> mRegionStrokes;
+    // 处理历史记录的后台线程，空闲时自动结束
+    private ExecutorService mHistoryExecutor;
+    // 重建缓存的后台线程
+    private ExecutorService mRebuildExecutor;
+    // 编码导出文件的后台线程
+    private ExecutorService mExportExecutor;
+    private Handler mMainHandler;
 
     private OnScaleChangeListener mScaleListener;
 
@@ -160,8 +294,16 @@ public class JCanvas extends SurfaceView implements
         mPaint = new Paint();
         mPaint.setAntiAlias(true);
         mPaint.setStyle(Paint.Style.FILL);
-        // 缩放时对性能影响很大，暂时禁用
+        // 是否过滤由绘制质量策略决定，过滤时使用 mFilterPaint
 //        mPaint.setFilterBitmap(true);
+        mFilterPaint = new Paint(mPaint);
+        mFilterPaint.setFilterBitmap(true);
+        mPyramid = new MipPyramid();
+        mLevelSrc = new Rect();
+        mLevelDst = new RectF();
+        mCacheBounds = new RectF();
+        mRenderPolicy = RenderPolicy.forDevice(getContext());
+        mDegradedFrame = false;
 
         mPatternPaint = new Paint();
         Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.canvas_background);
@@ -169,8 +311,14 @@ public class JCanvas extends SurfaceView implements
         mPatternPaint.setShader(s);
 //        bitmap.recycle();
 
+        mBitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
         mCacheCanvas = new Canvas();
-        mWorkingCanvas = new Canvas();
+        mStrokeCanvas = new Canvas();
+        mBackgroundCanvas = new Canvas();
+        mBackgroundMatrix = new Matrix();
+        mBackgroundBounds = new Rect();
+        mBackgroundLayerGeneration = mBackgroundGeneration - 1;
+        mBackCanvas = new Canvas();
 
         mTrack = new Track();
 
@@ -181,19 +329,78 @@ public class JCanvas extends SurfaceView implements
         mOrin = new RectF();
         mTrans = new RectF();
 
+        mDirtyRegionEnabled = true;
+        mDirtyAll = true;
+        mDirtySections = 0;
+        mDirtyArea = new RectF();
+        mFrameArea = new RectF();
+        mSectionBounds = new RectF();
+        mDirtyRect = new Rect();
+        mLastMatrix = new Matrix();
+
+        mViewInverse = new Matrix();
+        mViewport = new RectF();
+        mViewportClip = new Rect();
+        mBlitVisible = false;
+        mBlitSrc = new Rect();
+        mBlitDst = new RectF();
+
+        mStrokeSections = 0;
+        mStrokeBounds = new RectF();
+        mStrokeClip = new Rect();
+        mStrokeViewport = new Rect();
+
+        mPredictor = new StrokePredictor(PREDICTION_HORIZON);
+        mPredicted = false;
+        mPredictBounds = new RectF();
+        mTailCanvas = new Canvas();
+        mCopyPaint = new Paint();
+        mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mTailRect = new Rect();
+        mTailBackupRect = new Rect();
+        mSimplifyTolerance = SIMPLIFY_TOLERANCE;
+
         mInterpolator = new AccelerateDecelerateInterpolator();
         mScroller = new Scroller(getContext(), mInterpolator);
 
-        // 初始化撤销栈与重做栈
-        mUndoStack = new LinkedList<>();
-        mRedoStack = new LinkedList<>();
-        mCacheStack = new LinkedList<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "JCanvas-History"));
+        executor.allowCoreThreadTimeOut(true);
+        mHistoryExecutor = executor;
+
+        executor = new ThreadPoolExecutor(1, 1,
+                10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "JCanvas-Rebuild"));
+        executor.allowCoreThreadTimeOut(true);
+        mRebuildExecutor = executor;
+
+        executor = new ThreadPoolExecutor(1, 1,
+                10L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "JCanvas-Export"));
+        executor.allowCoreThreadTimeOut(true);
+        mExportExecutor = executor;
+        // 视图离开窗口后 post() 的任务可能不会执行，导出的回调直接发送到主线程
+        mMainHandler = new Handler(Looper.getMainLooper());
+
+        // 初始化撤销栈与重做栈。历史记录默认最多占用可用堆内存的八分之一，超出的部分写入缓存目录
+        mHistory = new HistoryStack(getContext().getCacheDir(), mHistoryExecutor,
+                Runtime.getRuntime().maxMemory() / 8);
+        // 快照默认最多占用可用堆内存的四分之一
+        mCheckpoints = new CheckpointStore(
+                CHECKPOINT_INTERVAL, Runtime.getRuntime().maxMemory() / 4);
+        mDeltaBounds = new RectF();
+        mRegionStrokes = new ArrayList<>();
 
-        mNeedInvalidate = false;
         mNeedFullInvalidate = false;
+        mRebuilding = false;
+        mRebuildGeneration = 0;
+        mScheduler = new FrameScheduler(this, mFrameTime);
+        mFrameStats = new FrameStatsRecorder(STATUS_DESTROYED + 1, JANK_NANOS);
 
         // temp vars
         mDown = new Point();
+        mInverse = new Matrix();
         mScalePivot = new Point();
 
         mInteracting = true;
@@ -222,8 +429,18 @@ public class JCanvas extends SurfaceView implements
         mHolder.unlockCanvasAndPost(mCanvas);
 
         setStatus(STATUS_IDLE);
-        new Thread(this).start();
-        requestFullInvalidate();
+        mScheduler.start();
+
+        // 缓存在 Surface 销毁后仍然保留，重新创建后只需完整绘制一帧，不需要重放历史记录
+        boolean kept;
+        synchronized (this) {
+            kept = null != mCache;
+        }
+        if (kept) {
+            requestInvalidate();
+        } else {
+            requestFullInvalidate();
+        }
     }
 
     @Override
@@ -232,21 +449,86 @@ public class JCanvas extends SurfaceView implements
         mWidth = width;
         mOrin.set(0, 0, mWidth, mHeight);
 
-        mCache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        mWorkingSpace = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        mCacheCanvas.setBitmap(mCache);
-        mWorkingCanvas.setBitmap(mWorkingSpace);
+        boolean resized;
+        synchronized (this) {
+            resized = null == mCache
+                    || mCache.getWidth() != width || mCache.getHeight() != height;
+            if (resized) {
+                // 旧的位图放入复用池，尺寸合适时直接复用其内存
+                mBitmapPool.release(mCache);
+                mCache = mBitmapPool.acquire(width, height);
+                mCacheCanvas.setBitmap(mCache);
+                mPyramid.setCache(mCache);
+                // 尺寸变化后原有的快照不再可用
+                mCheckpoints.clear();
+
+                mBitmapPool.release(mStrokeLayer);
+                mStrokeLayer = mBitmapPool.acquire(width, height);
+                mStrokeCanvas.setBitmap(mStrokeLayer);
+                // 新图层是空的，重新绘制当前路径的所有分段
+                mStrokeSections = 0;
+                mStrokeBounds.setEmpty();
+                mStrokeViewport.setEmpty();
+            }
+        }
+        if (!resized) {
+            // 尺寸没有变化，缓存仍然有效
+            requestInvalidate();
+            return;
+        }
         requestFullInvalidate();
 
+        // 缓存、路径图层与背景图层三张 ARGB_8888 的位图，每像素 4 字节。重建期间另有一张后备缓冲区
         Log.i(this.getClass().getSimpleName(),
-                "surfaceChanged: width = " + width + ", height = " + height);
+                "surfaceChanged: width = " + width + ", height = " + height
+                        + ", buffers = " + (3L * width * height * 4L) + " bytes");
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
         setStatus(STATUS_DESTROYED);
-//        mCache.recycle();
-//        mWorkingSpace.recycle();
+        // 等待绘制线程结束，保证返回后不再访问 Surface
+        mScheduler.stop();
+        // 缓存与图层保留到视图离开窗口，返回前台时只需复制到新的 Surface
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        // 视图不再显示，释放缓存与图层。重新显示时从历史记录重建
+        synchronized (this) {
+            if (null != mCache) {
+                mCache.recycle();
+                mCache = null;
+                mCacheCanvas.setBitmap(null);
+            }
+            if (null != mStrokeLayer) {
+                mStrokeLayer.recycle();
+                mStrokeLayer = null;
+                mStrokeCanvas.setBitmap(null);
+            }
+            // 重建中的后备缓冲区仍在后台线程使用，由重建结束后的尺寸检查丢弃
+            if (!mRebuilding && null != mBackBuffer) {
+                mBackBuffer.recycle();
+                mBackBuffer = null;
+                mBackCanvas.setBitmap(null);
+            }
+            mPyramid.release();
+            mNeedFullInvalidate = true;
+        }
+        // 渲染线程已在 surfaceDestroyed() 中停止，可以释放背景图层与尾部的备份
+        if (null != mBackgroundLayer) {
+            mBackgroundLayer.recycle();
+            mBackgroundLayer = null;
+            mBackgroundCanvas.setBitmap(null);
+        }
+        if (null != mTailBackup) {
+            mTailBackup.recycle();
+            mTailBackup = null;
+            mTailCanvas.setBitmap(null);
+        }
+        mBitmapPool.clear();
     }
 
     private Point mDown;
@@ -274,13 +556,13 @@ public class JCanvas extends SurfaceView implements
             track.departure(new PointV(mDown.x, mDown.y, new Velocity()));
             track.addStation(new PointV(focus.x, focus.y, new Velocity()));
 
-            Matrix matrix = new Matrix();
-            matrix.setTranslate(-mOffset.x, -mOffset.y);
-            matrix.postScale(1.0f / mScale, 1.0f / mScale);
-            track.applyTransform(matrix);
+            mInverse.setTranslate(-mOffset.x, -mOffset.y);
+            mInverse.postScale(1.0f / mScale, 1.0f / mScale);
+            track.applyTransform(mInverse);
             synchronized (this) {
-                mTrack.set(track);
+                mTrack = track;
             }
+            mScheduler.requestFrame();
         }
         return true;
     }
@@ -291,13 +573,21 @@ public class JCanvas extends SurfaceView implements
             setStatus(STATUS_PAINTING);
         }
 
-        Matrix matrix = new Matrix();
-        matrix.setTranslate(-mOffset.x, -mOffset.y);
-        matrix.postScale(1.0f / mScale, 1.0f / mScale);
-        track.applyTransform(matrix);
-        synchronized (this) {
-            mTrack.set(track);
+        // 只将检测器路径中新增的站点转换到文档坐标系后追加到工作路径，无需复制整条路径。
+        // 一个事件中的所有采样作为一个批次发布。
+        // 工作路径只在当前线程追加站点，渲染线程读取已发布的站点，两者之间不需要加锁
+        mInverse.setTranslate(-mOffset.x, -mOffset.y);
+        mInverse.postScale(1.0f / mScale, 1.0f / mScale);
+        Track stroke = mTrack;
+        if (track.getStationCount() < stroke.getStationCount()) {
+            // 检测器的路径已重新开始，两者不再对应。丢弃原先的工作路径
+            synchronized (this) {
+                discardTrack();
+                stroke = mTrack;
+            }
         }
+        stroke.addStations(track, stroke.getStationCount(), mInverse);
+        mScheduler.requestFrame();
 
         return true;
     }
@@ -341,6 +631,7 @@ public class JCanvas extends SurfaceView implements
             mScaleListener.onScaleChange(mScale);
         }
 
+        mScheduler.requestFrame();
         return true;
     }
 
@@ -361,9 +652,32 @@ public class JCanvas extends SurfaceView implements
         mOffset.x = mOffset.x + offset.x;
         mOffset.y = mOffset.y + offset.y;
         mScalePivot.set(focus.x, focus.y);
+        mScheduler.requestFrame();
         return true;
     }
 
+    @Override
+    public void onCancel() {
+        // 手势被系统取消，正在绘制的路径不加入撤销栈
+        synchronized (this) {
+            discardTrack();
+        }
+        mAbortAnimating = false;
+        if (STATUS_ANIMATING != getStatus()) {
+            setStatus(STATUS_IDLE);
+        }
+    }
+
+    /**
+     * 丢弃工作路径，清空路径图层。图层上已显示的部分需要重绘。需要在持有锁时调用
+     */
+    private void discardTrack() {
+        mDirtyArea.union(mStrokeBounds);
+        mTrack = new Track();
+        mDirtySections = 0;
+        clearStrokeLayer();
+    }
+
     private float mAnimStartScale;
     private float mAnimEndScale;
 
@@ -372,10 +686,36 @@ public class JCanvas extends SurfaceView implements
         if (STATUS_PAINTING == getStatus()) {
             // 将路径加入撤销栈，清空重做栈，清空路径
             synchronized (this) {
-                mUndoStack.addFirst(new HistoryData(mBrush, mTrack));
-                mRedoStack.clear();
-                updateCache(false);
-                mTrack.reset();
+                // 简化路径后再加入撤销栈。简化后的路径可能超出已绘制分段的区域，需要整体重绘。
+                // 简化总是保留最后一个站点，结束路径后提交的路径终止于该站点，不会丢失最后半段
+                Track track = new Track(mTrack);
+                track.simplify(mSimplifyTolerance);
+                track.arrive();
+                track.computeSectionBounds(0, mSectionBounds);
+                float outset = mBrush.getBoundsOutset();
+                mSectionBounds.inset(-outset, -outset);
+                mDirtyArea.union(mSectionBounds);
+
+                HistoryData data = new HistoryData(mBrush, track);
+                mHistory.commit(data);
+                // 重做栈被清空，原先更深的快照不再可用
+                mCheckpoints.invalidateFrom(mHistory.getUndoCount());
+
+                // 记录路径经过的缓存分块，用于撤销与重做。
+                // 如果有未完成的重建请求，当前缓存并不完整，不能记录
+                TileDelta delta = null;
+                if (!mNeedFullInvalidate && null != mCache) {
+                    delta = TileDelta.begin(mCache, track, outset);
+                }
+                updateCache();
+                if (null != delta) {
+                    delta.end(mCache);
+                    data.setDelta(delta);
+                    mHistoryExecutor.execute(delta::compress);
+                }
+                // 尚未绘制的分段同样需要重绘，路径图层上已显示的部分随后被清除
+                collectTrackSections(mDirtyArea);
+                discardTrack();
             }
         }
 
@@ -509,90 +849,161 @@ public class JCanvas extends SurfaceView implements
     private int mLastScrY;
 
     @Override
-    public void run() {
-        while (STATUS_DESTROYED != getStatus()) {
-            long time = 0L;
-
-            if (STATUS_IDLE != getStatus() || mNeedInvalidate) {
-                long start = System.currentTimeMillis();
-                mNeedInvalidate = false;
-
-                if (STATUS_ANIMATING == getStatus()) {
-                    // 获取滑动的位移
-                    if (mScroller.computeScrollOffset()) {
-                        mOffset.x += mScroller.getCurrX() - mLastScrX;
-                        mOffset.y += mScroller.getCurrY() - mLastScrY;
-
-                        if (mAnimStartScale != mAnimEndScale) {
-                            float fraction = (float) mScroller.timePassed()
-                                    / (float) mScroller.getDuration();
-
-                            // timePassed() 获得的值可能大于 Duration
-                            fraction = Math.min(fraction, 1.0f);
-                            fraction = mInterpolator.getInterpolation(fraction);
-                            mScale = mAnimStartScale + fraction * (mAnimEndScale - mAnimStartScale);
-
-                            if (null != mScaleListener) {
-                                // 保证回调在主线程执行
-                                post(() -> mScaleListener.onScaleChange(mScale));
-                            }
-                        }
+    public void onFrame(long frameTimeNanos) {
+        if (STATUS_DESTROYED == getStatus()) {
+            return;
+        }
 
-                        mLastScrX = mScroller.getCurrX();
-                        mLastScrY = mScroller.getCurrY();
+        long start = System.nanoTime();
+        int status = getStatus();
 
-                    } else {
-                        if (mAnimStartScale != mAnimEndScale) {
-                            if (null != mScaleListener) {
-                                // 保证回调在主线程执行
-                                post(() -> mScaleListener.onScaleChangeEnd(mScale));
-                            }
-                        }
-                        mLastScrX = 0;
-                        mLastScrY = 0;
-                        setStatus(STATUS_IDLE);
+        if (STATUS_ANIMATING == status) {
+            // 获取滑动的位移
+            if (mScroller.computeScrollOffset()) {
+                mOffset.x += mScroller.getCurrX() - mLastScrX;
+                mOffset.y += mScroller.getCurrY() - mLastScrY;
+
+                if (mAnimStartScale != mAnimEndScale) {
+                    float fraction = (float) mScroller.timePassed()
+                            / (float) mScroller.getDuration();
+
+                    // timePassed() 获得的值可能大于 Duration
+                    fraction = Math.min(fraction, 1.0f);
+                    fraction = mInterpolator.getInterpolation(fraction);
+                    mScale = mAnimStartScale + fraction * (mAnimEndScale - mAnimStartScale);
+
+                    if (null != mScaleListener) {
+                        // 保证回调在主线程执行
+                        post(() -> mScaleListener.onScaleChange(mScale));
                     }
                 }
 
-                drawContent(mNeedFullInvalidate);
-                mNeedFullInvalidate = false;
+                mLastScrX = mScroller.getCurrX();
+                mLastScrY = mScroller.getCurrY();
 
-                long end = System.currentTimeMillis();
-                time = end - start;
-                Log.d(this.getClass().getSimpleName(), "frame time -> " + time + "ms");
+            } else {
+                if (mAnimStartScale != mAnimEndScale) {
+                    if (null != mScaleListener) {
+                        // 保证回调在主线程执行
+                        post(() -> mScaleListener.onScaleChangeEnd(mScale));
+                    }
+                }
+                mLastScrX = 0;
+                mLastScrY = 0;
+                setStatus(STATUS_IDLE);
             }
+        }
 
-            if (time < mFrameTime) {
-                try {
-                    Thread.sleep(mFrameTime - time);
+        boolean drawn = drawContent();
 
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
+        // 动画需要连续的帧，其他状态的帧由输入事件或绘制请求驱动
+        if (STATUS_ANIMATING == getStatus()) {
+            mScheduler.requestFrame();
+        }
+
+        // 跳过的帧不计入统计
+        if (drawn) {
+            mFrameStats.record(status, System.nanoTime() - start);
         }
     }
 
     /**
      * 绘制内容
+     * <p>
+     * 启用脏区域绘制时，若视图变换未发生变化，则只锁定并重绘自上一帧以来发生变化的区域。
+     * 视图变换变化、撤销重做、背景变化等情况仍需完整绘制。
+     * </p>
+     * <p>
+     * 缓存的重建在后台线程进行，这里只绘制当前的缓存，不会因为重建而阻塞。
+     * </p>
+     *
+     * @return 是否绘制了一帧
      */
-    private void drawContent(boolean fullInvalidate) {
+    private boolean drawContent() {
+        if (null == mCache) {
+            // surfaceChanged() 尚未回调，此时不知道 Surface 尺寸。之后会请求完整绘制
+            return false;
+        }
+
+        // 设置矩阵
+        mMatrix.setTranslate(mOffset.x, mOffset.y);
+        mMatrix.postScale(mScale, mScale, mOffset.x, mOffset.y);
+        mMatrix.invert(mViewInverse);
+
+        // 视口：屏幕在文档坐标系中的区域
+        mViewport.set(0, 0, mWidth, mHeight);
+        mViewInverse.mapRect(mViewport);
+        toCacheRect(mViewport, mViewportClip);
+
+        // 交互时使用较低的画质，回到静止状态后以完整的画质重新绘制一帧
+        int status = getStatus();
+        boolean interactive = STATUS_SCALING == status || STATUS_MOVING == status
+                || STATUS_ANIMATING == status;
+        RenderPolicy policy = mRenderPolicy;
+        mFrameFilter = interactive ? policy.isInteractiveFilter() : policy.isIdleFilter();
+        mFrameLevelBias = interactive ? policy.getInteractiveLevelBias() : 0;
+        boolean degraded = interactive && policy.isDegradedWhileInteracting();
+
+        boolean full;
+        synchronized (this) {
+            full = mDirtyAll || !mDirtyRegionEnabled
+                    || !mMatrix.equals(mLastMatrix) || (mDegradedFrame && !degraded);
+            mFrameArea.set(mDirtyArea);
+            collectTrackSections(mFrameArea);
+            updatePrediction(mFrameArea);
+            mDirtyArea.setEmpty();
+            mDirtyAll = false;
+        }
+
+        if (!full) {
+            if (mFrameArea.isEmpty()) {
+                // 没有发生变化的区域，跳过本帧
+                return false;
+            }
+
+            // 映射到屏幕坐标系后用于锁定 Surface
+            mMatrix.mapRect(mFrameArea);
+            mFrameArea.roundOut(mDirtyRect);
+            if (!mDirtyRect.intersect(0, 0, mWidth, mHeight)) {
+                return false;
+            }
+        }
+
         try {
-            mCanvas = mHolder.lockCanvas();
-            // 进行绘图操作
-            // 设置矩阵
-            mMatrix.setTranslate(mOffset.x, mOffset.y);
-            mMatrix.postScale(mScale, mScale, mOffset.x, mOffset.y);
+            // lockCanvas(Rect) 可能会扩大 mDirtyRect ，但缓存与路径图层总是完整的，
+            // 所以扩大的区域同样可以正确绘制
+            mCanvas = full ? mHolder.lockCanvas() : mHolder.lockCanvas(mDirtyRect);
+            if (null == mCanvas) {
+                // Surface 不可用，下一帧完整绘制
+                synchronized (this) {
+                    mDirtyAll = true;
+                }
+                return false;
+            }
 
-            if (fullInvalidate) {
-                updateCache(true);
+            // 本帧需要绘制的屏幕区域映射回文档坐标系，只合成缓存与路径图层中对应的部分
+            if (full) {
+                mBlitDst.set(0, 0, mWidth, mHeight);
+            } else {
+                mBlitDst.set(mDirtyRect);
             }
-            drawWorkingPath();
-            drawCanvasBackground(mCanvas, mMatrix);
-            mCanvas.drawBitmap(mWorkingSpace, mMatrix, mPaint);
+            mViewInverse.mapRect(mBlitDst);
+            mBlitVisible = toCacheRect(mBlitDst, mBlitSrc);
+            mBlitDst.set(mBlitSrc);
+
+            // 进行绘图操作。缓存与路径图层直接在 Surface 上合成，不经过中间位图
+            drawCanvasBackground(mCanvas, mMatrix, full);
+            int count = mCanvas.save();
+            mCanvas.concat(mMatrix);
+            drawWorkingPath(mCanvas);
+            mCanvas.restoreToCount(count);
+            mLastMatrix.set(mMatrix);
+            mDegradedFrame = degraded;
+            return true;
 
         } catch (Exception e) {
             e.printStackTrace();
+            return false;
 
         } finally {
             if (mCanvas != null) {
@@ -608,69 +1019,490 @@ public class JCanvas extends SurfaceView implements
      * 参考：
      * https://medium.com/@ali.muzaffar/android-why-your-canvas-shapes-arent-smooth-aa2a3f450eb5
      * </p>
+     * <p>
+     * 只绘制撤销栈顶的路径。缓存需要重建时保存的快照并不完整，此时不保存快照。
+     * </p>
      */
-    private synchronized void updateCache(boolean full) {
-        if (full) {
-            // 清空画布
-            mCacheCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+    private synchronized void updateCache() {
+        HistoryData data = mHistory.peekUndo();
+        data.draw(mCacheCanvas);
+        data.getBounds(mCacheBounds);
+        mPyramid.invalidate(mCacheBounds);
+        if (!mNeedFullInvalidate) {
+            mCheckpoints.onCommit(mHistory.getUndoCount(), mCache);
+        }
+    }
+
+    /**
+     * 将文档坐标系中的区域向外取整，限制在缓存的范围内。
+     * 额外扩大 1px ，保证过滤采样时边缘的像素也能取到相邻的像素
+     *
+     * @param area 区域
+     * @param out  缓存中的区域
+     * @return 区域是否与缓存相交
+     */
+    private boolean toCacheRect(RectF area, Rect out) {
+        area.roundOut(out);
+        out.inset(-1, -1);
+        if (!out.intersect(0, 0, mWidth, mHeight)) {
+            out.setEmpty();
+            return false;
+        }
+        return true;
+    }
 
-            mCacheStack.addAll(mUndoStack);
-            // 绘制撤销栈中记录的路径。需要逆序遍历
-            ListIterator<HistoryData> it = mCacheStack.listIterator(mCacheStack.size());
+    /**
+     * 只重绘被撤销的路径所在区域的缓存。需要在持有锁时调用
+     * <p>
+     * 在该区域内从最近的快照恢复缓存，再通过空间索引找出快照之后与该区域相交的路径依次重绘，
+     * 耗时只与该区域内的路径数量有关。相交的路径过多、过长或者已溢出到磁盘时放弃，改为在后台重建整个缓存。
+     * </p>
+     *
+     * @param data 被撤销的路径
+     * @return 是否已重绘
+     */
+    private boolean redrawRegion(HistoryData data) {
+        data.getBounds(mDeltaBounds);
+        if (mDeltaBounds.isEmpty()) {
+            // 路径没有绘制任何内容
+            return true;
+        }
+
+        int depth = mHistory.getUndoCount();
+        int base = mCheckpoints.getBaseDepth(depth);
+        mRegionStrokes.clear();
+        if (mHistory.query(mDeltaBounds, base, mRegionStrokes) > REGION_REDRAW_LIMIT) {
+            mRegionStrokes.clear();
+            return false;
+        }
+        // 路径过长，或者需要从溢出文件读取时，同样交给后台重建
+        int stations = 0;
+        for (HistoryData stroke : mRegionStrokes) {
+            stations += stroke.getStationCount();
+            if (!stroke.isLoaded() || stations > REGION_REDRAW_STATIONS) {
+                mRegionStrokes.clear();
+                return false;
+            }
+        }
+
+        // 裁剪区域对齐到像素，区域内的绘制结果与完整重建相同
+        mDeltaBounds.roundOut(mStrokeClip);
+        int count = mCacheCanvas.save();
+        mCacheCanvas.clipRect(mStrokeClip);
+        mCheckpoints.restore(depth, mCacheCanvas);
+        for (HistoryData stroke : mRegionStrokes) {
+            stroke.draw(mCacheCanvas);
+        }
+        mCacheCanvas.restoreToCount(count);
+        mRegionStrokes.clear();
+
+        mPyramid.invalidate(mDeltaBounds);
+        mDirtyArea.union(mDeltaBounds);
+        return true;
+    }
+
+    /**
+     * 在后台线程重建缓存
+     * <p>
+     * 先从最近的快照恢复后备缓冲区（没有快照时清空），再绘制快照之后的路径，
+     * 最多只需绘制快照间隔条路径。只有恢复快照与交换缓冲区时持有锁，
+     * 绘制路径期间渲染线程与输入事件不会被阻塞，画面继续显示原有的缓存。
+     * </p>
+     * <p>
+     * 每次请求重建都会增加重建代数。撤销、重做、重置等操作使快照后的撤销栈发生变化，
+     * 此时结果已过期，直接丢弃并重新开始。重建期间只提交了新路径时，
+     * 在交换前将新路径补绘到后备缓冲区即可。
+     * </p>
+     */
+    private void rebuildCache() {
+        int generation;
+        int depth;
+        ArrayList<HistoryData> strokes = new ArrayList<>();
+        synchronized (this) {
+            if (null == mCache) {
+                // 视图已离开窗口，重新显示时再重建
+                mRebuilding = false;
+                return;
+            }
+            generation = mRebuildGeneration;
+            if (null == mBackBuffer || mBackBuffer.getWidth() != mCache.getWidth()
+                    || mBackBuffer.getHeight() != mCache.getHeight()) {
+                mBitmapPool.release(mBackBuffer);
+                mBackBuffer = mBitmapPool.acquire(mCache.getWidth(), mCache.getHeight());
+                mBackCanvas.setBitmap(mBackBuffer);
+            }
+
+            depth = mHistory.getUndoCount();
+            int base = mCheckpoints.restore(depth, mBackCanvas);
+
+            // 撤销栈中最新的路径在前，需要逆序遍历
+            ListIterator<HistoryData> it = mHistory.undoIterator(depth - base);
             while (it.hasPrevious()) {
-                it.previous().draw(mCacheCanvas);
+                strokes.add(it.previous());
             }
+            // 在锁外读取路径期间，溢出文件不会被删除
+            mHistory.beginRead();
+        }
 
-            mCacheStack.clear();
+        boolean failed = false;
+        try {
+            for (HistoryData data : strokes) {
+                if (generation != mRebuildGeneration) {
+                    break;
+                }
+                if (!data.draw(mBackCanvas)) {
+                    failed = true;
+                    break;
+                }
+            }
 
-        } else {
-            HistoryData data = mUndoStack.getFirst();
-            data.draw(mCacheCanvas);
+        } finally {
+            mHistory.endRead();
+        }
+
+        synchronized (this) {
+            mRebuilding = false;
+            if (null == mCache) {
+                mBackBuffer.recycle();
+                mBackBuffer = null;
+                mBackCanvas.setBitmap(null);
+            } else if (generation != mRebuildGeneration
+                    || mBackBuffer.getWidth() != mCache.getWidth()
+                    || mBackBuffer.getHeight() != mCache.getHeight()) {
+                // 结果已过期，重新开始。此时读取失败可能只是因为路径已被丢弃
+                scheduleRebuild();
+            } else {
+                // 补绘重建期间提交的路径
+                ListIterator<HistoryData> it =
+                        mHistory.undoIterator(mHistory.getUndoCount() - depth);
+                while (!failed && it.hasPrevious()) {
+                    failed = !it.previous().draw(mBackCanvas);
+                }
+
+                if (failed) {
+                    // 路径无法读回，重建的缓存并不完整。保留原有的缓存，下次请求重建时再尝试
+                    Log.w(this.getClass().getSimpleName(), "rebuild cache failed, history unavailable");
+                    releaseBackBuffer();
+                } else {
+                    Bitmap front = mCache;
+                    mCache = mBackBuffer;
+                    mBackBuffer = front;
+                    mCacheCanvas.setBitmap(mCache);
+                    releaseBackBuffer();
+                    mPyramid.setCache(mCache);
+
+                    mNeedFullInvalidate = false;
+                    mDirtyAll = true;
+                }
+            }
         }
+        mScheduler.requestFrame();
+    }
+
+    /**
+     * 重建结束后将后备缓冲区放回复用池，不在两次重建之间占用一整张缓存大小的位图。需要持有锁
+     */
+    private void releaseBackBuffer() {
+        mBackCanvas.setBitmap(null);
+        mBitmapPool.release(mBackBuffer);
+        mBackBuffer = null;
     }
 
     /**
-     * 绘制工作路径（正在绘制的路径）
+     * 请求重建缓存。同一时间只有一个重建任务，任务结束时检查是否有新的请求。
+     * 调用时需要持有锁
      */
-    private void drawWorkingPath() {
-        // 清空画布
-        mWorkingCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-        // 绘制缓存
-        mWorkingCanvas.drawBitmap(mCache, 0, 0, mPaint);
-        // 绘制当前工作路径
+    private void scheduleRebuild() {
+        if (mRebuilding || !mNeedFullInvalidate || null == mCache) {
+            return;
+        }
+        mRebuilding = true;
+        mRebuildExecutor.execute(this::rebuildCache);
+    }
+
+    /**
+     * 绘制缓存与工作路径（正在绘制的路径）
+     * <p>
+     * 工作路径不再每帧完整重绘，而是只将新增的分段绘制到路径图层上，再将图层合成到画布。
+     * 每帧的耗时与路径的长度无关。
+     * 分段以不透明的方式绘制在图层上，合成时才应用笔刷的透明度与混合模式，
+     * 所以图层上的像素不会因重复绘制而叠加透明度，抗锯齿的边缘也只会被相邻的分段覆盖有限次。
+     * </p>
+     * <p>
+     * 笔刷的混合模式不是 SRC_OVER （如橡皮擦）时，路径图层只能作用于缓存而不能作用于背景，
+     * 此时在离屏图层中合成缓存与路径图层。离屏图层的大小受画布的裁剪区域限制。
+     * </p>
+     * <p>
+     * 放大时屏幕只显示文档的一小部分。缓存与路径图层只合成本帧需要绘制的区域，
+     * 路径图层也只绘制视口内的分段，每帧的耗时与屏幕上可见的内容成正比。
+     * </p>
+     *
+     * @param canvas 已应用视图矩阵的画布
+     */
+    private void drawWorkingPath(Canvas canvas) {
         synchronized (this) {
-            if (!mTrack.isEmpty()) {
-                Track track = new Track(mTrack);
-                mBrush.drawTrack(mWorkingCanvas, track);
+            Track track = mTrack;
+            if (track.isEmpty()) {
+                if (mBlitVisible) {
+                    drawCache(canvas);
+                }
+                return;
             }
+
+            if (mStrokeSections > 0 && !mStrokeViewport.contains(mViewportClip)) {
+                // 视口超出了路径图层已绘制的范围，重新绘制整条路径
+                clearStrokeLayer();
+            }
+
+            int sections = track.getSectionCount();
+            if (mStrokeSections < sections) {
+                if (0 == mStrokeSections) {
+                    mBrush.beginSections();
+                    mStrokeViewport.set(mViewportClip);
+                }
+                // 只绘制视口内的部分
+                int count = mStrokeCanvas.save();
+                mStrokeCanvas.clipRect(mStrokeViewport);
+                mBrush.drawSections(mStrokeCanvas, track, mStrokeSections, sections);
+                mStrokeCanvas.restoreToCount(count);
+
+                track.computeSectionBounds(mStrokeSections, sections, mSectionBounds);
+                float outset = mBrush.getBoundsOutset();
+                mSectionBounds.inset(-outset, -outset);
+                mStrokeBounds.union(mSectionBounds);
+                mStrokeSections = sections;
+            }
+
+            if (!mBlitVisible) {
+                return;
+            }
+
+            // 预测的尾部临时绘制在路径图层上，与路径一起合成
+            boolean tail = mPredicted && mStrokeSections > 0 && drawTail();
+            Paint layerPaint = mBrush.getLayerPaint();
+            if (!mBrush.needsIsolation()) {
+                drawCache(canvas);
+                canvas.drawBitmap(mStrokeLayer, mBlitSrc, mBlitDst, layerPaint);
+
+            } else {
+                int layer = canvas.saveLayer(mBlitDst, null, Canvas.ALL_SAVE_FLAG);
+                drawCache(canvas);
+                canvas.drawBitmap(mStrokeLayer, mBlitSrc, mBlitDst, layerPaint);
+                canvas.restoreToCount(layer);
+            }
+            if (tail) {
+                restoreTail();
+            }
+        }
+    }
+
+    /**
+     * 将预测的尾部绘制到路径图层上。绘制前备份尾部所在区域的图层，合成后由 {@link #restoreTail()} 恢复。
+     * 需要在持有锁时调用
+     *
+     * @return 是否绘制了尾部
+     */
+    private boolean drawTail() {
+        mPredictBounds.roundOut(mTailRect);
+        if (!mTailRect.intersect(0, 0, mStrokeLayer.getWidth(), mStrokeLayer.getHeight())) {
+            return false;
         }
+
+        int width = mTailRect.width();
+        int height = mTailRect.height();
+        if (null == mTailBackup || mTailBackup.getWidth() < width
+                || mTailBackup.getHeight() < height) {
+            // 尾部的区域随速率变化，只增大不缩小
+            int w = null == mTailBackup ? width : Math.max(width, mTailBackup.getWidth());
+            int h = null == mTailBackup ? height : Math.max(height, mTailBackup.getHeight());
+            if (null != mTailBackup) {
+                mTailBackup.recycle();
+            }
+            mTailBackup = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            mTailCanvas.setBitmap(mTailBackup);
+        }
+
+        mTailBackupRect.set(0, 0, width, height);
+        mTailCanvas.drawBitmap(mStrokeLayer, mTailRect, mTailBackupRect, mCopyPaint);
+        mBrush.drawPrediction(mStrokeCanvas, mPredictor.getTail());
+        return true;
+    }
+
+    /**
+     * 擦除路径图层上的尾部，恢复备份的区域。需要在持有锁时调用
+     */
+    private void restoreTail() {
+        mStrokeCanvas.drawBitmap(mTailBackup, mTailBackupRect, mTailRect, mCopyPaint);
+    }
+
+    /**
+     * 合成缓存中本帧需要绘制的区域。需要在持有锁时调用
+     * <p>
+     * 缩小显示时从缓存的缩小副本中选择最接近的一级，开启过滤后绘制，避免锯齿。
+     * 是否过滤以及是否使用更低分辨率的副本由绘制质量策略决定。
+     * </p>
+     *
+     * @param canvas 已应用视图矩阵的画布
+     */
+    private void drawCache(Canvas canvas) {
+        Paint paint = mFrameFilter ? mFilterPaint : mPaint;
+        int level = mPyramid.levelFor(mScale, mFrameLevelBias);
+        if (0 == level) {
+            canvas.drawBitmap(mCache, mBlitSrc, mBlitDst, paint);
+            return;
+        }
+
+        Bitmap bitmap = mPyramid.getLevel(level);
+        int factor = 1 << level;
+        mLevelSrc.set(mBlitSrc.left / factor, mBlitSrc.top / factor,
+                (mBlitSrc.right + factor - 1) / factor, (mBlitSrc.bottom + factor - 1) / factor);
+        if (!mLevelSrc.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight())) {
+            return;
+        }
+        mLevelDst.set(mLevelSrc.left * factor, mLevelSrc.top * factor,
+                mLevelSrc.right * factor, mLevelSrc.bottom * factor);
+        canvas.drawBitmap(bitmap, mLevelSrc, mLevelDst, paint);
+    }
+
+    /**
+     * 清空路径图层。只清除绘制过的区域。需要在持有锁时调用
+     */
+    private void clearStrokeLayer() {
+        if (!mStrokeBounds.isEmpty()) {
+            mStrokeBounds.roundOut(mStrokeClip);
+            int count = mStrokeCanvas.save();
+            mStrokeCanvas.clipRect(mStrokeClip);
+            mStrokeCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            mStrokeCanvas.restoreToCount(count);
+        }
+
+        mStrokeSections = 0;
+        mStrokeBounds.setEmpty();
+        mStrokeViewport.setEmpty();
     }
 
     /**
      * 绘制画布背景。
+     * <p>
+     * 背景在变换不变时保持不变，合成到背景图层后每帧只需复制。
+     * 变换正在变化（缩放、移动）时图层每帧都会失效，此时直接绘制，等变换稳定后再合成图层。
+     * </p>
+     *
+     * @param canvas 画布
+     * @param matrix 变换
+     * @param full   是否完整绘制。否则只复制 mDirtyRect 的部分
      */
-    private void drawCanvasBackground(Canvas canvas, Matrix matrix) {
-        // 平铺灰白格子
-        canvas.drawPaint(mPatternPaint);
-        // 绘制背景
+    private void drawCanvasBackground(Canvas canvas, Matrix matrix, boolean full) {
+        int generation = mBackgroundGeneration;
+        if (null == mBackgroundLayer || mBackgroundLayer.getWidth() != mWidth
+                || mBackgroundLayer.getHeight() != mHeight
+                || mBackgroundLayerGeneration != generation
+                || !mBackgroundMatrix.equals(matrix)) {
+            if (!matrix.equals(mLastMatrix)) {
+                composeBackground(canvas, matrix);
+                return;
+            }
+
+            if (null == mBackgroundLayer || mBackgroundLayer.getWidth() != mWidth
+                    || mBackgroundLayer.getHeight() != mHeight) {
+                mBitmapPool.release(mBackgroundLayer);
+                mBackgroundLayer = mBitmapPool.acquire(mWidth, mHeight);
+                mBackgroundCanvas.setBitmap(mBackgroundLayer);
+            }
+            mBackgroundLayer.eraseColor(Color.TRANSPARENT);
+            composeBackground(mBackgroundCanvas, matrix);
+            mBackgroundMatrix.set(matrix);
+            mBackgroundLayerGeneration = generation;
+        }
+
+        if (full) {
+            canvas.drawBitmap(mBackgroundLayer, 0, 0, null);
+        } else {
+            canvas.drawBitmap(mBackgroundLayer, mDirtyRect, mDirtyRect, null);
+        }
+    }
+
+    /**
+     * 合成画布背景。背景不透明且覆盖整个画面时不需要平铺格子
+     *
+     * @param canvas 画布
+     * @param matrix 变换
+     */
+    private void composeBackground(Canvas canvas, Matrix matrix) {
         matrix.mapRect(mTrans, mOrin);
-        mBG.setBounds(((int) mTrans.left), ((int) mTrans.top),
+        mBackgroundBounds.set(((int) mTrans.left), ((int) mTrans.top),
                 ((int) mTrans.right), ((int) mTrans.bottom));
+        boolean covered = PixelFormat.OPAQUE == mBG.getOpacity()
+                && mBackgroundBounds.contains(0, 0, mWidth, mHeight);
+        if (!covered) {
+            // 平铺灰白格子
+            canvas.drawPaint(mPatternPaint);
+        }
+        // 绘制背景
+        mBG.setBounds(mBackgroundBounds);
         mBG.draw(canvas);
     }
 
     /**
-     * 请求进行绘制
+     * 请求进行绘制，重绘整个画面
      */
     private void requestInvalidate() {
-        mNeedInvalidate = true;
+        synchronized (this) {
+            mDirtyAll = true;
+        }
+        // 父类构造时可能通过 setBackground() 调用到这里，此时尚未初始化
+        if (null != mScheduler) {
+            mScheduler.requestFrame();
+        }
+    }
+
+    /**
+     * 重新生成工作路径的预测尾部，将上一帧与本帧的尾部加入脏区域 area 。需要在持有锁时调用
+     *
+     * @param area 脏区域
+     */
+    private void updatePrediction(RectF area) {
+        // 上一帧的尾部需要擦除
+        area.union(mPredictBounds);
+        mPredictBounds.setEmpty();
+
+        mPredicted = mPredictor.update(mTrack, mScale);
+        if (mPredicted) {
+            mPredictor.getTailBounds(mPredictBounds);
+            float outset = mBrush.getBoundsOutset();
+            mPredictBounds.inset(-outset, -outset);
+            area.union(mPredictBounds);
+        }
     }
 
     /**
-     * 进行完整绘制，包括重绘缓存栈
+     * 将工作路径中新增的分段加入脏区域 area 。由渲染线程在每帧开始时调用，需要在持有锁时调用
+     *
+     * @param area 脏区域
+     */
+    private void collectTrackSections(RectF area) {
+        Track track = mTrack;
+        int count = track.getSectionCount();
+        if (count <= mDirtySections) {
+            return;
+        }
+
+        track.computeSectionBounds(mDirtySections, count, mSectionBounds);
+        float outset = mBrush.getBoundsOutset();
+        mSectionBounds.inset(-outset, -outset);
+        area.union(mSectionBounds);
+        mDirtySections = count;
+    }
+
+    /**
+     * 进行完整绘制，并在后台重建缓存
      */
     private void requestFullInvalidate() {
-        mNeedFullInvalidate = true;
+        synchronized (this) {
+            mNeedFullInvalidate = true;
+            mRebuildGeneration++;
+            scheduleRebuild();
+        }
         requestInvalidate();
     }
 
@@ -687,6 +1519,7 @@ public class JCanvas extends SurfaceView implements
             return;
         }
         mBG = background;
+        mBackgroundGeneration++;
         requestInvalidate();
     }
 
@@ -701,6 +1534,7 @@ public class JCanvas extends SurfaceView implements
 
         if (mBG instanceof ColorDrawable) {
             ((ColorDrawable) mBG.mutate()).setColor(color);
+            mBackgroundGeneration++;
             requestInvalidate();
         } else {
             setBackground(new ColorDrawable(color));
@@ -714,11 +1548,11 @@ public class JCanvas extends SurfaceView implements
      */
     private void setStatus(int status) {
         mStatus = status;
-        // 当设置为 STATUS_IDLE 时，很大可能绘制线程仍在绘制上一帧。
-        // 当绘制线程绘制完上一帧而开始绘制当前帧时，检测到状态为 STATUS_IDLE 就会停止绘制。
-        // 所以在将状态置为 STATUS_IDLE 时调用 requestInvalidate() 强制进行当前帧的绘制，保证完整。
-        if (STATUS_IDLE == status) {
-            requestInvalidate();
+        // 状态变化时请求绘制一帧。
+        // 进入 STATUS_IDLE 时保证最后的视图变换与脏区域得到绘制，进入 STATUS_ANIMATING 时启动动画帧。
+        // 未绘制的脏区域与视图变换的变化会在这一帧中处理，无需完整重绘。
+        if (STATUS_DESTROYED != status) {
+            mScheduler.requestFrame();
         }
     }
 
@@ -776,7 +1610,7 @@ public class JCanvas extends SurfaceView implements
      * false 不可撤销
      */
     public boolean canUndo() {
-        return mUndoStack.size() > 0;
+        return mHistory.getUndoCount() > 0;
     }
 
     /**
@@ -786,16 +1620,38 @@ public class JCanvas extends SurfaceView implements
      * false 不可重做
      */
     public boolean canRedo() {
-        return mRedoStack.size() > 0;
+        return mHistory.getRedoCount() > 0;
     }
 
     /**
      * 撤销上一步操作
      */
     public void undo() {
-        if (0 < mUndoStack.size()) {
-            HistoryData data = mUndoStack.removeFirst();
-            mRedoStack.addFirst(data);
+        boolean restored = false;
+        synchronized (this) {
+            HistoryData data = mHistory.undo();
+            if (null == data) {
+                return;
+            }
+
+            // 有可用的分块时直接写回提交前的分块，否则重绘路径所在的区域，都不行时重建缓存
+            TileDelta delta = data.getDelta();
+            if (!mNeedFullInvalidate && null != mCache) {
+                if (null != delta && delta.isValidFor(mCache)) {
+                    delta.restoreBefore(mCache);
+                    delta.computeBounds(mDeltaBounds);
+                    mPyramid.invalidate(mDeltaBounds);
+                    mDirtyArea.union(mDeltaBounds);
+                    restored = true;
+                } else {
+                    restored = redrawRegion(data);
+                }
+            }
+        }
+
+        if (restored) {
+            mScheduler.requestFrame();
+        } else {
             requestFullInvalidate();
         }
     }
@@ -804,10 +1660,40 @@ public class JCanvas extends SurfaceView implements
      * 重做撤销的操作
      */
     public void redo() {
-        if (0 < mRedoStack.size()) {
-            HistoryData data = mRedoStack.removeFirst();
-            mUndoStack.addFirst(data);
+        boolean restored = false;
+        boolean rebuild = false;
+        synchronized (this) {
+            HistoryData data = mHistory.redo();
+            if (null == data) {
+                return;
+            }
+
+            // 重做的路径正好位于当前缓存之上，无需重建缓存。
+            // 有可用的分块时直接写回提交后的分块，否则重新绘制这条路径。
+            // 如果已有未完成的重建请求，重建的结果已不包含这条路径，需要重新开始
+            if (mNeedFullInvalidate) {
+                rebuild = true;
+            } else if (null != mCache) {
+                TileDelta delta = data.getDelta();
+                if (null != delta && delta.isValidFor(mCache)) {
+                    delta.restoreAfter(mCache);
+                    mCheckpoints.onCommit(mHistory.getUndoCount(), mCache);
+                    delta.computeBounds(mDeltaBounds);
+                    mPyramid.invalidate(mDeltaBounds);
+                    mDirtyArea.union(mDeltaBounds);
+                    restored = true;
+                } else {
+                    updateCache();
+                }
+            }
+        }
+
+        if (restored) {
+            mScheduler.requestFrame();
+        } else if (rebuild) {
             requestFullInvalidate();
+        } else {
+            requestInvalidate();
         }
     }
 
@@ -823,11 +1709,154 @@ public class JCanvas extends SurfaceView implements
         mBG.setBounds(((int) mOrin.left), ((int) mOrin.top),
                 ((int) mOrin.right), ((int) mOrin.bottom));
         mBG.draw(canvas);
-        canvas.drawBitmap(mCache, 0, 0, null);
+        synchronized (this) {
+            canvas.drawBitmap(mCache, 0, 0, null);
+        }
 
         return b;
     }
 
+    /**
+     * 将画布导出为 PNG 文件。
+     * <p>
+     * 调用时在主线程中将背景与缓存复制为快照，之后在后台线程中逐条读取快照的像素，
+     * 编码后通过缓冲流写入文件，编码期间可以继续绘制。多次导出按调用顺序依次进行。
+     * 缓存正在重建或等待重建时，其内容与撤销栈并不一致，此时从最近的快照恢复，
+     * 快照之后的路径在后台线程中补绘，与重建缓存的方式相同。
+     * 导出失败时删除已写入的文件，无论失败原因都会通知监听器。
+     * </p>
+     *
+     * @param file     导出的文件，已存在时覆盖
+     * @param listener 监听器，可以为 null
+     */
+    public void exportPng(@NonNull File file, @Nullable OnExportListener listener) {
+        Bitmap snapshot;
+        Bitmap layer = null;
+        ArrayList<HistoryData> strokes = null;
+        synchronized (this) {
+            if (null == mCache) {
+                notifyExportFailed(listener, file, new IllegalStateException("Canvas is not ready"));
+                return;
+            }
+            snapshot = mBitmapPool.acquire(mCache.getWidth(), mCache.getHeight());
+            Canvas canvas = new Canvas(snapshot);
+            // 渲染线程不持有锁绘制背景，使用背景的副本以免修改其边界
+            Drawable.ConstantState state = mBG.getConstantState();
+            Drawable bg = null != state ? state.newDrawable(getResources()) : mBG;
+            bg.setBounds(((int) mOrin.left), ((int) mOrin.top),
+                    ((int) mOrin.right), ((int) mOrin.bottom));
+            bg.draw(canvas);
+
+            if (mNeedFullInvalidate || mRebuilding) {
+                // 缓存已过期，在单独的图层中从快照恢复，路径不能直接绘制在背景上。
+                // 在后台线程读取路径期间，溢出文件不会被删除
+                layer = mBitmapPool.acquire(mCache.getWidth(), mCache.getHeight());
+                int depth = mHistory.getUndoCount();
+                int base = mCheckpoints.restore(depth, new Canvas(layer));
+
+                // 撤销栈中最新的路径在前，需要逆序遍历
+                strokes = new ArrayList<>();
+                ListIterator<HistoryData> it = mHistory.undoIterator(depth - base);
+                while (it.hasPrevious()) {
+                    strokes.add(it.previous());
+                }
+                mHistory.beginRead();
+
+            } else {
+                canvas.drawBitmap(mCache, 0, 0, null);
+            }
+        }
+
+        Bitmap pending = layer;
+        ArrayList<HistoryData> replay = strokes;
+        mExportExecutor.execute(() -> {
+            try {
+                if (null != pending) {
+                    Canvas canvas = new Canvas(pending);
+                    for (HistoryData data : replay) {
+                        if (!data.draw(canvas)) {
+                            throw new IOException("History data unavailable");
+                        }
+                    }
+                    new Canvas(snapshot).drawBitmap(pending, 0, 0, null);
+                }
+                writePng(snapshot, file, listener);
+                if (null != listener) {
+                    mMainHandler.post(() -> listener.onExportComplete(file));
+                }
+
+            } catch (Exception e) {
+                onExportError(listener, file, e);
+
+            } catch (OutOfMemoryError e) {
+                onExportError(listener, file, new IOException("Out of memory", e));
+
+            } finally {
+                if (null != pending) {
+                    mHistory.endRead();
+                }
+                mBitmapPool.release(snapshot);
+                mBitmapPool.release(pending);
+            }
+        });
+    }
+
+    private void onExportError(OnExportListener listener, File file, Exception e) {
+        Log.w(this.getClass().getSimpleName(), "export failed", e);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        notifyExportFailed(listener, file, e);
+    }
+
+    /**
+     * 在后台线程中编码快照。每次读取的行数由 EXPORT_STRIP_PIXELS 的像素预算决定，
+     * 只在进度的百分比变化时通知。文件所在的目录不存在时先创建
+     */
+    private void writePng(Bitmap snapshot, File file, OnExportListener listener)
+            throws IOException {
+        File dir = file.getParentFile();
+        if (null != dir && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+
+        int width = snapshot.getWidth();
+        int height = snapshot.getHeight();
+        int strip = Math.max(1, Math.min(height, EXPORT_STRIP_PIXELS / Math.max(1, width)));
+        int[] pixels = new int[width * strip];
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), EXPORT_BUFFER_SIZE);
+        PngWriter writer = null;
+        try {
+            writer = new PngWriter(out, width, height);
+            int percent = 0;
+            for (int y = 0; y < height; y += strip) {
+                int rows = Math.min(strip, height - y);
+                snapshot.getPixels(pixels, 0, width, 0, y, width, rows);
+                writer.writeRows(pixels, 0, width, rows);
+
+                int p = (int) (100L * (y + rows) / height);
+                if (null != listener && p != percent) {
+                    percent = p;
+                    mMainHandler.post(() -> listener.onExportProgress(p));
+                }
+            }
+            writer.finish();
+            writer = null;
+
+        } finally {
+            if (null != writer) {
+                writer.abort();
+            }
+            out.close();
+        }
+    }
+
+    private void notifyExportFailed(OnExportListener listener, File file, Exception e) {
+        if (null != listener) {
+            mMainHandler.post(() -> listener.onExportFailed(file, e));
+        }
+    }
+
     /**
      * 重置画布。重置撤销栈
      */
@@ -835,12 +1864,180 @@ public class JCanvas extends SurfaceView implements
         mScale = 1.0f;
         mOffset.set(0f, 0f);
         mMatrix.reset();
-        mTrack.reset();
-        mUndoStack.clear();
-        mRedoStack.clear();
+        synchronized (this) {
+            mTrack = new Track();
+            mDirtySections = 0;
+            clearStrokeLayer();
+            mHistory.clear();
+            mCheckpoints.clear();
+        }
         requestFullInvalidate();
     }
 
+    /**
+     * 设置是否启用脏区域绘制。
+     * 启用后若视图变换未发生变化，每帧只重绘自上一帧以来发生变化的区域。默认启用。
+     *
+     * @param enabled 是否启用
+     */
+    public void setDirtyRegionEnabled(boolean enabled) {
+        mDirtyRegionEnabled = enabled;
+        requestInvalidate();
+    }
+
+    /**
+     * 设置绘制质量策略。默认根据设备的内存与处理器数量选择，见 {@link RenderPolicy#forDevice(Context)}
+     *
+     * @param policy 策略
+     */
+    public void setRenderPolicy(@NonNull RenderPolicy policy) {
+        mRenderPolicy = policy;
+        requestInvalidate();
+    }
+
+    /**
+     * 获取绘制质量策略
+     *
+     * @return 策略
+     */
+    public RenderPolicy getRenderPolicy() {
+        return mRenderPolicy;
+    }
+
+    /**
+     * 设置路径预测的时长。
+     * 绘制时根据最新的触摸点与速率预测 horizon 毫秒后的位置，并将预测的部分临时绘制在路径末端，
+     * 以降低绘制的感知延迟。预测的部分不会被保存，会随新的触摸点不断更新。为 0 时关闭预测。
+     * 默认约为一帧。
+     *
+     * @param horizon 预测时长，单位为毫秒
+     */
+    public void setPredictionHorizon(int horizon) {
+        mPredictor.setHorizon(horizon);
+    }
+
+    /**
+     * 获取路径预测的时长
+     *
+     * @return 预测时长，单位为毫秒
+     */
+    public int getPredictionHorizon() {
+        return mPredictor.getHorizon();
+    }
+
+    /**
+     * 获取路径预测的平均误差。
+     * 误差为预测位置与之后到达预测时刻的真实触摸位置在屏幕上的距离
+     *
+     * @return 平均误差，单位为像素
+     */
+    public float getPredictionMeanError() {
+        return mPredictor.getMeanError();
+    }
+
+    /**
+     * 获取路径预测的最大误差
+     *
+     * @return 最大误差，单位为像素
+     */
+    public float getPredictionMaxError() {
+        return mPredictor.getMaxError();
+    }
+
+    /**
+     * 获取已统计误差的预测次数
+     *
+     * @return 预测次数
+     */
+    public long getPredictionSampleCount() {
+        return mPredictor.getSampleCount();
+    }
+
+    /**
+     * 清空路径预测的误差统计
+     */
+    public void resetPredictionStats() {
+        mPredictor.resetStats();
+    }
+
+    /**
+     * 设置提交路径时的简化容差。
+     * 路径加入历史记录前会删除对形状影响很小的触摸点，以减少占用的内存与重绘的耗时。
+     * 被删除的点到简化后路径的距离不超过 tolerance 。为 0 时不简化。默认为 0.5 像素。
+     *
+     * @param tolerance 容差，单位为画布（文档坐标系）的像素
+     */
+    public void setSimplifyTolerance(float tolerance) {
+        mSimplifyTolerance = Math.max(0f, tolerance);
+    }
+
+    /**
+     * 设置缓存快照的间隔。
+     * 每提交 interval 条路径保存一次缓存的快照，撤销时最多只需重绘 interval 条路径。
+     *
+     * @param interval 间隔，至少为 1
+     */
+    public void setCheckpointInterval(int interval) {
+        synchronized (this) {
+            mCheckpoints.setInterval(interval);
+        }
+    }
+
+    /**
+     * 设置缓存快照可以占用的内存。超出时丢弃最早的快照
+     *
+     * @param bytes 字节数
+     */
+    public void setCheckpointMemoryBudget(long bytes) {
+        synchronized (this) {
+            mCheckpoints.setBudget(bytes);
+        }
+    }
+
+    /**
+     * 设置历史记录可以占用的内存。
+     * 超出时较早的历史记录会被写入应用的缓存目录并从内存中释放，需要时再读回。
+     *
+     * @param bytes 字节数
+     */
+    public void setHistoryMemoryBudget(long bytes) {
+        mHistory.setBudget(bytes);
+    }
+
+    /**
+     * 获取历史记录当前占用的内存
+     *
+     * @return 字节数
+     */
+    public long getHistoryMemoryUsage() {
+        return mHistory.getMemoryUsage();
+    }
+
+    /**
+     * 获取历史记录当前占用的磁盘空间
+     *
+     * @return 字节数
+     */
+    public long getHistoryDiskUsage() {
+        return mHistory.getDiskUsage();
+    }
+
+    /**
+     * 获取帧耗时的统计数据，按帧开始时的状态分别统计，只统计实际绘制的帧
+     *
+     * @return 统计数据的快照
+     */
+    public FrameStats getFrameStats() {
+        return mFrameStats.snapshot();
+    }
+
+    /**
+     * 清空帧耗时的统计数据
+     */
+    public void resetFrameStats() {
+        mFrameStats.reset();
+    }
+
     public void stopInteract(boolean stop) {
         mInteracting = !stop;
     }
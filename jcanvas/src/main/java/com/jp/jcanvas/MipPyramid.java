@@ -0,0 +1,196 @@
+package com.jp.jcanvas;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * 缓存的多级缩小副本。
+ * <p>
+ * 第 k 级的尺寸为缓存的 1 / 2^k ，由第 k - 1 级（第 0 级即缓存本身）缩小一半得到，
+ * 2 : 1 的双线性过滤正好相当于对 2 x 2 的像素取平均。缩小显示时从不小于目标倍率的最近一级采样，
+ * 过滤只需在不超过 2 倍的范围内进行，开启过滤的开销很小，画面也不会出现锯齿。
+ * </p>
+ * <p>
+ * 各级只在需要时创建。缓存变化时记录变化的区域，使用某一级之前才更新该级及更低级中变化的部分。
+ * 需要在持有画布的锁时调用。
+ * </p>
+ */
+class MipPyramid {
+
+    /**
+     * 最小一级的边长下限
+     */
+    private static final int MIN_SIZE = 32;
+
+    private Bitmap mCache;
+    private int mMaxLevel;
+    // mLevels[0] 不使用
+    private Bitmap[] mLevels;
+    // 各级尚未更新的区域（文档坐标系）
+    private RectF[] mDirty;
+
+    private final Canvas mCanvas;
+    private final Paint mPaint;
+    private final Rect mSrc;
+    private final Rect mDst;
+
+    MipPyramid() {
+        mCanvas = new Canvas();
+        mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mSrc = new Rect();
+        mDst = new Rect();
+        mLevels = new Bitmap[1];
+        mDirty = new RectF[1];
+    }
+
+    /**
+     * 设置缓存。缓存尺寸变化时丢弃所有级别
+     *
+     * @param cache 缓存
+     */
+    void setCache(Bitmap cache) {
+        boolean resized = null == mCache || mCache.getWidth() != cache.getWidth()
+                || mCache.getHeight() != cache.getHeight();
+        mCache = cache;
+        if (!resized) {
+            invalidateAll();
+            return;
+        }
+
+        release();
+        int levels = 0;
+        int size = Math.min(cache.getWidth(), cache.getHeight());
+        while ((size >> (levels + 1)) >= MIN_SIZE) {
+            levels++;
+        }
+        mMaxLevel = levels;
+        mLevels = new Bitmap[levels + 1];
+        mDirty = new RectF[levels + 1];
+        for (int i = 1; i <= levels; i++) {
+            mDirty[i] = new RectF();
+        }
+    }
+
+    /**
+     * 缓存中的区域发生了变化
+     *
+     * @param area 区域（文档坐标系）
+     */
+    void invalidate(RectF area) {
+        for (int i = 1; i <= mMaxLevel; i++) {
+            mDirty[i].union(area);
+        }
+    }
+
+    /**
+     * 整个缓存发生了变化
+     */
+    void invalidateAll() {
+        if (null == mCache) {
+            return;
+        }
+        for (int i = 1; i <= mMaxLevel; i++) {
+            mDirty[i].set(0, 0, mCache.getWidth(), mCache.getHeight());
+        }
+    }
+
+    /**
+     * 获取适合 scale 倍率显示的级别，即缩小倍率不低于 scale 的最小一级
+     *
+     * @param scale 显示倍率
+     * @param bias  额外降低的级别数，用于以较低的分辨率快速绘制
+     * @return 级别，0 表示缓存本身
+     */
+    int levelFor(float scale, int bias) {
+        int level = bias;
+        if (scale < 1f) {
+            level += (int) Math.floor(Math.log(1.0 / scale) / Math.log(2.0));
+        }
+        return Math.min(level, mMaxLevel);
+    }
+
+    /**
+     * 获取第 level 级，使用前更新该级及更低级中变化的部分
+     *
+     * @param level 级别，至少为 1
+     * @return 第 level 级的位图
+     */
+    Bitmap getLevel(int level) {
+        for (int i = 1; i <= level; i++) {
+            update(i);
+        }
+        return mLevels[level];
+    }
+
+    private void update(int level) {
+        RectF dirty = mDirty[level];
+        if (null == mLevels[level]) {
+            // 向上取整，保证覆盖缓存的边缘
+            int w = (mCache.getWidth() + (1 << level) - 1) >> level;
+            int h = (mCache.getHeight() + (1 << level) - 1) >> level;
+            mLevels[level] = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            dirty.set(0, 0, mCache.getWidth(), mCache.getHeight());
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Bitmap dst = mLevels[level];
+        Bitmap src = 1 == level ? mCache : mLevels[level - 1];
+        float factor = 1 << level;
+        mDst.set((int) Math.floor(dirty.left / factor), (int) Math.floor(dirty.top / factor),
+                (int) Math.ceil(dirty.right / factor), (int) Math.ceil(dirty.bottom / factor));
+        if (mDst.intersect(0, 0, dst.getWidth(), dst.getHeight())) {
+            // 上一级的宽（高）为奇数时，本级最后一列（行）只对应上一级的一列（行）像素。
+            // 这一列（行）单独缩小，其余部分保持 2 : 1 ，避免整个区域的比例偏离而错位
+            int left = mDst.left;
+            int top = mDst.top;
+            int right = Math.min(mDst.right, src.getWidth() / 2);
+            int bottom = Math.min(mDst.bottom, src.getHeight() / 2);
+            int edgeX = mDst.right > right ? src.getWidth() - 1 : -1;
+            int edgeY = mDst.bottom > bottom ? src.getHeight() - 1 : -1;
+
+            mCanvas.setBitmap(dst);
+            draw(src, left * 2, top * 2, right * 2, bottom * 2, left, top, right, bottom);
+            if (edgeX >= 0) {
+                draw(src, edgeX, top * 2, edgeX + 1, bottom * 2, right, top, right + 1, bottom);
+            }
+            if (edgeY >= 0) {
+                draw(src, left * 2, edgeY, right * 2, edgeY + 1, left, bottom, right, bottom + 1);
+            }
+            if (edgeX >= 0 && edgeY >= 0) {
+                draw(src, edgeX, edgeY, edgeX + 1, edgeY + 1, right, bottom, right + 1, bottom + 1);
+            }
+            mCanvas.setBitmap(null);
+        }
+        dirty.setEmpty();
+    }
+
+    private void draw(Bitmap src, int srcLeft, int srcTop, int srcRight, int srcBottom,
+                      int dstLeft, int dstTop, int dstRight, int dstBottom) {
+        if (dstLeft >= dstRight || dstTop >= dstBottom) {
+            return;
+        }
+        mSrc.set(srcLeft, srcTop, srcRight, srcBottom);
+        mDst.set(dstLeft, dstTop, dstRight, dstBottom);
+        mCanvas.drawBitmap(src, mSrc, mDst, mPaint);
+    }
+
+    /**
+     * 释放所有级别
+     */
+    void release() {
+        for (int i = 1; i < mLevels.length; i++) {
+            if (null != mLevels[i]) {
+                mLevels[i].recycle();
+                mLevels[i] = null;
+            }
+        }
+    }
+}
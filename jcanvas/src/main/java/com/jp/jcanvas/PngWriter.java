@@ -0,0 +1,201 @@
+package com.jp.jcanvas;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 逐行写入的 PNG 编码器。
+ * <p>
+ * 输出 8 位 RGBA 的 PNG ，每行使用 Sub 过滤后经 Deflater 压缩，压缩结果按块写入 IDAT 。
+ * 调用方可以按条带分批提供像素，编码期间只需保存一个条带，而不需要一次取出整张图片，
+ * 也可以根据已写入的行数报告进度。
+ * </p>
+ * <p>
+ * 不是线程安全的。
+ * </p>
+ */
+class PngWriter {
+
+    private static final byte[] SIGNATURE = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /**
+     * IDAT 块的最大长度
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream mOut;
+    private final int mWidth;
+    private final int mHeight;
+    private final Deflater mDeflater;
+    private final ChunkStream mChunks;
+    private final DeflaterOutputStream mData;
+    private final byte[] mRow;
+    private int mRows;
+
+    /**
+     * 写入文件头
+     *
+     * @param out    输出流，由调用方关闭
+     * @param width  宽度
+     * @param height 高度
+     * @throws IOException 写入失败
+     */
+    PngWriter(OutputStream out, int width, int height) throws IOException {
+        mOut = new DataOutputStream(out);
+        mWidth = width;
+        mHeight = height;
+        mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        mChunks = new ChunkStream();
+        mData = new DeflaterOutputStream(mChunks, mDeflater, CHUNK_SIZE);
+        // 每行以过滤类型开头
+        mRow = new byte[1 + 4 * width];
+        mRows = 0;
+
+        mOut.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;  // 位深度
+        header[9] = 6;  // RGBA
+        header[10] = 0; // Deflate
+        header[11] = 0; // 自适应过滤
+        header[12] = 0; // 不交错
+        writeChunk("IHDR", header, 0, header.length);
+    }
+
+    /**
+     * 写入若干行
+     *
+     * @param argb   未预乘的 ARGB 像素，与 Bitmap#getPixels 的格式相同
+     * @param offset 第一个像素的位置
+     * @param stride 每行的像素数
+     * @param rows   行数
+     * @throws IOException 写入失败
+     */
+    void writeRows(int[] argb, int offset, int stride, int rows) throws IOException {
+        byte[] row = mRow;
+        for (int r = 0; r < rows; r++) {
+            int p = offset + r * stride;
+            // Sub 过滤：每个字节减去左侧像素的对应字节
+            row[0] = 1;
+            int prev = 0;
+            for (int x = 0, i = 1; x < mWidth; x++, i += 4) {
+                int c = argb[p + x];
+                row[i] = (byte) ((c >> 16) - (prev >> 16));
+                row[i + 1] = (byte) ((c >> 8) - (prev >> 8));
+                row[i + 2] = (byte) (c - prev);
+                row[i + 3] = (byte) ((c >>> 24) - (prev >>> 24));
+                prev = c;
+            }
+            mData.write(row);
+        }
+        mRows += rows;
+    }
+
+    /**
+     * 获取已写入的行数
+     *
+     * @return 行数
+     */
+    int getWrittenRows() {
+        return mRows;
+    }
+
+    /**
+     * 结束压缩并写入文件尾。不关闭输出流
+     *
+     * @throws IOException 写入失败，或写入的行数与高度不符
+     */
+    void finish() throws IOException {
+        if (mRows != mHeight) {
+            throw new IOException("Expected " + mHeight + " rows but got " + mRows);
+        }
+
+        mData.finish();
+        // 写入最后一个不满的 IDAT 块
+        mChunks.flush();
+        mDeflater.end();
+        writeChunk("IEND", new byte[0], 0, 0);
+        mOut.flush();
+    }
+
+    /**
+     * 中止编码，释放压缩器
+     */
+    void abort() {
+        mDeflater.end();
+    }
+
+    private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] name = {
+                (byte) type.charAt(0), (byte) type.charAt(1),
+                (byte) type.charAt(2), (byte) type.charAt(3)};
+        crc.update(name);
+        crc.update(data, offset, length);
+
+        mOut.writeInt(length);
+        mOut.write(name);
+        mOut.write(data, offset, length);
+        mOut.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * 将压缩后的数据按块写入 IDAT
+     */
+    private class ChunkStream extends OutputStream {
+        private final byte[] mBuffer = new byte[CHUNK_SIZE];
+        private int mLength;
+
+        @Override
+        public void write(int b) throws IOException {
+            mBuffer[mLength++] = (byte) b;
+            if (CHUNK_SIZE == mLength) {
+                flushChunk();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, CHUNK_SIZE - mLength);
+                System.arraycopy(b, off, mBuffer, mLength, n);
+                mLength += n;
+                off += n;
+                len -= n;
+                if (CHUNK_SIZE == mLength) {
+                    flushChunk();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (mLength > 0) {
+                writeChunk("IDAT", mBuffer, 0, mLength);
+                mLength = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.jp.jcanvas;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+
+/**
+ * 绘制质量策略
+ * <p>
+ * 缩放、移动与惯性滑动时帧率比画质更重要，使用较低的画质；
+ * 回到静止状态后再以完整的画质重新绘制一帧。
+ * 较低的画质可以关闭位图过滤，也可以从更低分辨率的缓存缩小副本中采样。
+ * </p>
+ */
+public class RenderPolicy {
+
+    /**
+     * 性能较好的设备：交互时同样开启过滤
+     */
+    public static final RenderPolicy HIGH = new RenderPolicy(true, 0, true);
+
+    /**
+     * 一般设备：交互时关闭过滤
+     */
+    public static final RenderPolicy BALANCED = new RenderPolicy(false, 0, true);
+
+    /**
+     * 低端设备：交互时关闭过滤，并使用低一级分辨率的缩小副本
+     */
+    public static final RenderPolicy LOW = new RenderPolicy(false, 1, true);
+
+    private final boolean mInteractiveFilter;
+    private final int mInteractiveLevelBias;
+    private final boolean mIdleFilter;
+
+    /**
+     * @param interactiveFilter    交互时是否开启位图过滤
+     * @param interactiveLevelBias 交互时在缩小副本中额外降低的级别数，每级分辨率减半
+     * @param idleFilter           静止时是否开启位图过滤
+     */
+    public RenderPolicy(boolean interactiveFilter, int interactiveLevelBias, boolean idleFilter) {
+        this.mInteractiveFilter = interactiveFilter;
+        this.mInteractiveLevelBias = Math.max(0, interactiveLevelBias);
+        this.mIdleFilter = idleFilter;
+    }
+
+    /**
+     * 根据设备的内存与处理器数量选择策略
+     *
+     * @param context context
+     * @return 策略
+     */
+    public static RenderPolicy forDevice(Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (null == am) {
+            return BALANCED;
+        }
+
+        boolean lowRam = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && am.isLowRamDevice();
+        int memoryClass = am.getMemoryClass();
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (lowRam || memoryClass <= 64 || cores <= 2) {
+            return LOW;
+        }
+        if (memoryClass >= 192 && cores >= 4) {
+            return HIGH;
+        }
+        return BALANCED;
+    }
+
+    public boolean isInteractiveFilter() {
+        return mInteractiveFilter;
+    }
+
+    public int getInteractiveLevelBias() {
+        return mInteractiveLevelBias;
+    }
+
+    public boolean isIdleFilter() {
+        return mIdleFilter;
+    }
+
+    /**
+     * 交互时的画质是否低于静止时。低于时回到静止状态后需要重新绘制一帧
+     *
+     * @return 是否降低画质
+     */
+    boolean isDegradedWhileInteracting() {
+        return mInteractiveLevelBias > 0 || (mIdleFilter && !mInteractiveFilter);
+    }
+}
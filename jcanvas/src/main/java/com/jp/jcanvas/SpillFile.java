@@ -0,0 +1,138 @@
+package com.jp.jcanvas;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.jp.jcanvas.entity.HistoryData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+
+/**
+ * 历史记录的溢出文件。
+ * <p>
+ * 位于应用私有的缓存目录，只追加写入。首次写入时创建，清空历史记录时删除。
+ * 溢出文件只在进程内有效，之前的进程异常退出时留下的文件由 {@link #deleteStale(File)} 清理。
+ * </p>
+ */
+class SpillFile implements HistoryData.Storage {
+
+    private static final String SUFFIX = ".spill";
+
+    // 本进程创建且尚未删除的文件名，清理残留文件时跳过
+    private static final HashSet<String> sLiveFiles = new HashSet<>();
+    private static boolean sStaleDeleted = false;
+
+    private final File mDir;
+    private File mFile;
+    private RandomAccessFile mAccess;
+    // 已删除的文件不再写入，避免重新创建无人清理的文件
+    private boolean mDeleted;
+
+    SpillFile(@NonNull File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * 追加数据
+     *
+     * @param data 数据
+     * @return 数据的起始位置
+     * @throws IOException 写入失败
+     */
+    @Override
+    public synchronized long append(byte[] data) throws IOException {
+        if (mDeleted) {
+            throw new IOException("Spill file deleted");
+        }
+        if (null == mAccess) {
+            synchronized (sLiveFiles) {
+                mFile = File.createTempFile("history", SUFFIX, mDir);
+                sLiveFiles.add(mFile.getName());
+            }
+            mAccess = new RandomAccessFile(mFile, "rw");
+        }
+
+        long offset = mAccess.length();
+        mAccess.seek(offset);
+        mAccess.write(data);
+        return offset;
+    }
+
+    @Override
+    public synchronized void read(long offset, byte[] buffer) throws IOException {
+        if (null == mAccess) {
+            throw new IOException("Spill file closed");
+        }
+
+        mAccess.seek(offset);
+        mAccess.readFully(buffer);
+    }
+
+    /**
+     * 获取文件大小
+     *
+     * @return 字节数
+     */
+    synchronized long length() {
+        try {
+            return null == mAccess ? 0L : mAccess.length();
+
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 关闭并删除文件。之前写入的数据全部失效，之后不能再写入
+     */
+    synchronized void delete() {
+        mDeleted = true;
+        if (null == mAccess) {
+            return;
+        }
+
+        try {
+            mAccess.close();
+
+        } catch (IOException e) {
+            Log.w(this.getClass().getSimpleName(), "close spill file failed", e);
+        }
+
+        synchronized (sLiveFiles) {
+            sLiveFiles.remove(mFile.getName());
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mAccess = null;
+        mFile = null;
+    }
+
+    /**
+     * 删除目录中之前的进程留下的溢出文件。每个进程只在第一次调用时清理，
+     * 本进程创建的文件不受影响
+     *
+     * @param dir 溢出文件所在的目录
+     */
+    static void deleteStale(@NonNull File dir) {
+        synchronized (sLiveFiles) {
+            if (sStaleDeleted) {
+                return;
+            }
+            sStaleDeleted = true;
+
+            File[] files = dir.listFiles();
+            if (null == files) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SUFFIX) && !sLiveFiles.contains(name) && !file.delete()) {
+                    Log.w(SpillFile.class.getSimpleName(), "delete stale spill file failed: " + name);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.jp.jcanvas;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import com.jp.jcanvas.entity.HistoryData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * 已提交路径的空间索引。
+ * <p>
+ * 将文档坐标系划分为边长 CELL_SIZE 的均匀网格，每条路径登记在其包围盒覆盖的所有网格中。
+ * 查询某个区域时只需检查区域覆盖的网格，耗时取决于该区域内路径的密度，而与历史记录的总数无关。
+ * 只索引撤销栈中的路径，即当前可见的路径，由 {@link HistoryStack} 在提交、撤销与重做时维护。
+ * </p>
+ */
+class StrokeIndex {
+
+    /**
+     * 网格的边长，单位为文档坐标系的像素
+     */
+    private static final int CELL_SIZE = 256;
+
+    private static final Comparator<Entry> DEPTH_ORDER =
+            (a, b) -> Integer.compare(a.depth, b.depth);
+
+    private final HashMap<Long, ArrayList<Entry>> mCells;
+    private final IdentityHashMap<HistoryData, Entry> mEntries;
+    private final ArrayList<Entry> mResult;
+    private final RectF mBounds;
+    // 查询时用于去重，每次查询递增
+    private int mStamp;
+
+    StrokeIndex() {
+        mCells = new HashMap<>();
+        mEntries = new IdentityHashMap<>();
+        mResult = new ArrayList<>();
+        mBounds = new RectF();
+        mStamp = 0;
+    }
+
+    /**
+     * 登记路径
+     *
+     * @param data  路径
+     * @param depth 路径在撤销栈中的位置，从栈底开始计数
+     */
+    void add(@NonNull HistoryData data, int depth) {
+        data.getBounds(mBounds);
+        if (mBounds.isEmpty()) {
+            return;
+        }
+
+        Entry entry = new Entry(data, depth);
+        mEntries.put(data, entry);
+        int c0 = cell(mBounds.left);
+        int r0 = cell(mBounds.top);
+        int c1 = cell(mBounds.right);
+        int r1 = cell(mBounds.bottom);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                Long key = key(c, r);
+                ArrayList<Entry> list = mCells.get(key);
+                if (null == list) {
+                    list = new ArrayList<>();
+                    mCells.put(key, list);
+                }
+                list.add(entry);
+            }
+        }
+    }
+
+    /**
+     * 移除路径
+     *
+     * @param data 路径
+     */
+    void remove(@NonNull HistoryData data) {
+        Entry entry = mEntries.remove(data);
+        if (null == entry) {
+            return;
+        }
+
+        data.getBounds(mBounds);
+        int c0 = cell(mBounds.left);
+        int r0 = cell(mBounds.top);
+        int c1 = cell(mBounds.right);
+        int r1 = cell(mBounds.bottom);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                Long key = key(c, r);
+                ArrayList<Entry> list = mCells.get(key);
+                if (null == list) {
+                    continue;
+                }
+                // 撤销的总是最新的路径，从尾部查找
+                int index = list.lastIndexOf(entry);
+                if (index >= 0) {
+                    list.remove(index);
+                }
+                if (list.isEmpty()) {
+                    mCells.remove(key);
+                }
+            }
+        }
+    }
+
+    void clear() {
+        mCells.clear();
+        mEntries.clear();
+    }
+
+    /**
+     * 查询包围盒与 rect 相交的路径
+     *
+     * @param rect  区域（文档坐标系）
+     * @param from  只查询位置不低于 from 的路径
+     * @param out   按在撤销栈中的位置升序（即绘制顺序）写入结果
+     * @return 结果的数量
+     */
+    int query(RectF rect, int from, List<HistoryData> out) {
+        if (rect.isEmpty()) {
+            return 0;
+        }
+
+        mStamp++;
+        mResult.clear();
+        int c0 = cell(rect.left);
+        int r0 = cell(rect.top);
+        int c1 = cell(rect.right);
+        int r1 = cell(rect.bottom);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                ArrayList<Entry> list = mCells.get(key(c, r));
+                if (null == list) {
+                    continue;
+                }
+                for (Entry entry : list) {
+                    if (entry.stamp == mStamp || entry.depth < from) {
+                        continue;
+                    }
+                    entry.stamp = mStamp;
+                    entry.data.getBounds(mBounds);
+                    if (RectF.intersects(mBounds, rect)) {
+                        mResult.add(entry);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(mResult, DEPTH_ORDER);
+        for (Entry entry : mResult) {
+            out.add(entry.data);
+        }
+        int count = mResult.size();
+        mResult.clear();
+        return count;
+    }
+
+    private static int cell(float value) {
+        return (int) Math.floor(value / CELL_SIZE);
+    }
+
+    private static Long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private static class Entry {
+        final HistoryData data;
+        final int depth;
+        int stamp;
+
+        Entry(HistoryData data, int depth) {
+            this.data = data;
+            this.depth = depth;
+        }
+    }
+}
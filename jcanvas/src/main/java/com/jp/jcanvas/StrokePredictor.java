@@ -0,0 +1,191 @@
+package com.jp.jcanvas;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import com.jp.jcanvas.entity.Track;
+
+/**
+ * 工作路径的预测
+ * <p>
+ * 根据工作路径最后一个站点的速率外推 horizon 毫秒后的位置，生成从最后一个已绘制分段的终点
+ * 经过最后一个站点到达预测位置的尾部，用于降低绘制的感知延迟。
+ * 尾部只绘制在画面上，不会写入路径图层、缓存或历史记录，每帧根据最新的站点重新生成。
+ * </p>
+ * <p>
+ * 每次从新的站点进行预测时记录预测位置，之后的站点到达预测时刻时，
+ * 在相邻站点之间线性插值得到真实位置，两者在屏幕上的距离即为预测误差。
+ * </p>
+ * <p>
+ * 只在渲染线程使用，统计数据可以在其他线程读取。
+ * </p>
+ */
+class StrokePredictor {
+
+    // 等待验证的预测数量上限
+    private static final int PENDING_SIZE = 8;
+
+    private volatile int mHorizon;
+
+    private Path mTail;
+    private RectF mTailBounds;
+
+    // 等待验证的预测，按预测时刻排列的环形队列
+    private long[] mPendingTime;
+    private float[] mPendingXY;
+    private int mPendingHead;
+    private int mPendingCount;
+    private Track mLastTrack;
+    private int mLastIndex;
+
+    private long mSamples;
+    private double mErrorSum;
+    private float mMaxError;
+
+    StrokePredictor(int horizon) {
+        mHorizon = horizon;
+        mTail = new Path();
+        mTailBounds = new RectF();
+        mPendingTime = new long[PENDING_SIZE];
+        mPendingXY = new float[2 * PENDING_SIZE];
+        mLastIndex = -1;
+    }
+
+    void setHorizon(int horizon) {
+        mHorizon = Math.max(0, horizon);
+    }
+
+    int getHorizon() {
+        return mHorizon;
+    }
+
+    /**
+     * 根据路径最新的站点生成预测尾部，同时验证之前的预测
+     *
+     * @param track 工作路径（文档坐标系）
+     * @param scale 视图的缩放倍率。站点的速率为屏幕坐标系下每秒移动的像素数
+     * @return 是否生成了尾部
+     */
+    boolean update(Track track, float scale) {
+        if (track != mLastTrack) {
+            // 新的路径，丢弃之前的预测
+            mLastTrack = track;
+            mLastIndex = -1;
+            mPendingCount = 0;
+        }
+
+        if (mHorizon <= 0 || track.isEmpty()) {
+            return false;
+        }
+
+        int last = track.getStationCount() - 1;
+        verify(track, last, scale);
+
+        float t = mHorizon / 1000f / scale;
+        float lx = track.getX(last);
+        float ly = track.getY(last);
+        float px = lx + track.getVelocityX(last) * t;
+        float py = ly + track.getVelocityY(last) * t;
+        if (last != mLastIndex) {
+            mLastIndex = last;
+            enqueue(track.getTime(last) + mHorizon, px, py);
+        }
+
+        // 已绘制的最后一个分段终止于最后两个站点的中点
+        float sx = (track.getX(last - 1) + lx) / 2f;
+        float sy = (track.getY(last - 1) + ly) / 2f;
+        mTail.reset();
+        mTail.moveTo(sx, sy);
+        mTail.quadTo(lx, ly, px, py);
+        mTailBounds.set(sx, sy, sx, sy);
+        mTailBounds.union(lx, ly);
+        mTailBounds.union(px, py);
+        return true;
+    }
+
+    Path getTail() {
+        return mTail;
+    }
+
+    /**
+     * 获取尾部的包围盒（文档坐标系），不包含笔刷宽度
+     *
+     * @param bounds 包围盒
+     */
+    void getTailBounds(RectF bounds) {
+        bounds.set(mTailBounds);
+    }
+
+    private void enqueue(long time, float x, float y) {
+        if (PENDING_SIZE == mPendingCount) {
+            // 丢弃最早的预测
+            mPendingHead = (mPendingHead + 1) % PENDING_SIZE;
+            mPendingCount--;
+        }
+
+        int index = (mPendingHead + mPendingCount) % PENDING_SIZE;
+        mPendingTime[index] = time;
+        mPendingXY[2 * index] = x;
+        mPendingXY[2 * index + 1] = y;
+        mPendingCount++;
+    }
+
+    private void verify(Track track, int last, float scale) {
+        long lastTime = track.getTime(last);
+        while (mPendingCount > 0) {
+            long time = mPendingTime[mPendingHead];
+            if (time > lastTime) {
+                // 真实的站点尚未到达预测时刻
+                return;
+            }
+
+            // 找到预测时刻所在的相邻站点，线性插值得到真实位置
+            int i = last;
+            while (i > 0 && track.getTime(i - 1) >= time) {
+                i--;
+            }
+            float x = track.getX(i);
+            float y = track.getY(i);
+            if (i > 0) {
+                long t0 = track.getTime(i - 1);
+                long t1 = track.getTime(i);
+                if (t1 > t0) {
+                    float f = (float) (t1 - time) / (t1 - t0);
+                    x += (track.getX(i - 1) - x) * f;
+                    y += (track.getY(i - 1) - y) * f;
+                }
+            }
+
+            float error = (float) Math.hypot(x - mPendingXY[2 * mPendingHead],
+                    y - mPendingXY[2 * mPendingHead + 1]) * scale;
+            record(error);
+
+            mPendingHead = (mPendingHead + 1) % PENDING_SIZE;
+            mPendingCount--;
+        }
+    }
+
+    private synchronized void record(float error) {
+        mSamples++;
+        mErrorSum += error;
+        mMaxError = Math.max(mMaxError, error);
+    }
+
+    synchronized long getSampleCount() {
+        return mSamples;
+    }
+
+    synchronized float getMeanError() {
+        return 0 == mSamples ? 0f : (float) (mErrorSum / mSamples);
+    }
+
+    synchronized float getMaxError() {
+        return mMaxError;
+    }
+
+    synchronized void resetStats() {
+        mSamples = 0;
+        mErrorSum = 0;
+        mMaxError = 0f;
+    }
+}
@@ -2,6 +2,10 @@ package com.jp.jcanvas.brush;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Xfermode;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.ColorInt;
 import android.support.annotation.FloatRange;
@@ -15,19 +19,39 @@ public abstract class BaseBrush<T extends BaseBrush> {
 
     protected static final int MAX_SIZE = 99;
 
+    /**
+     * 普通的覆盖混合模式。Xfermode 无法读取其模式，通过 {@link #setBlendMode(PorterDuff.Mode)}
+     * 设置时共用这个对象，增量绘制时据此判断是否需要离屏合成
+     */
+    private static final Xfermode SRC_OVER = new PorterDuffXfermode(PorterDuff.Mode.SRC_OVER);
+
     @ColorInt
     protected int mColor;
     protected Paint mPaint;
     protected float mSize;
     protected float mAlpha;
 
+    // 增量绘制使用的画笔与临时路径
+    private Paint mSectionPaint;
+    private Paint mLayerPaint;
+    private Path mSectionPath;
+    private boolean mIsolated;
+
     public BaseBrush() {
         mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        initIncrement();
         initBrush();
     }
 
     public BaseBrush(BaseBrush src) {
         this.mPaint = new Paint(src.mPaint);
+        initIncrement();
+    }
+
+    private void initIncrement() {
+        mSectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLayerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        mSectionPath = new Path();
     }
 
     public void setColor(@ColorInt int color) {
@@ -45,6 +69,114 @@ public abstract class BaseBrush<T extends BaseBrush> {
         mPaint.setAlpha((int) (alpha * 255));
     }
 
+    /**
+     * 设置画笔的混合模式。
+     * SRC_OVER 与不设置混合模式相同，增量绘制时不需要离屏合成。
+     * 直接通过 mPaint.setXfermode() 设置的混合模式一律视为需要离屏合成
+     *
+     * @param mode 混合模式，为 null 时清除
+     */
+    protected void setBlendMode(PorterDuff.Mode mode) {
+        if (null == mode) {
+            mPaint.setXfermode(null);
+        } else if (PorterDuff.Mode.SRC_OVER == mode) {
+            mPaint.setXfermode(SRC_OVER);
+        } else {
+            mPaint.setXfermode(new PorterDuffXfermode(mode));
+        }
+    }
+
+    /**
+     * 获取笔刷绘制时超出路径的最大距离，用于计算需要重绘的区域。
+     * 默认根据画笔的线宽、线帽与连接方式估算，并留出 1px 的抗锯齿余量。
+     * 绘制范围超出路径线宽的笔刷需要重写此方法。
+     *
+     * @return 超出路径的距离
+     */
+    public float getBoundsOutset() {
+        if (Paint.Style.FILL == mPaint.getStyle()) {
+            return 1f;
+        }
+
+        float half = mPaint.getStrokeWidth() / 2f;
+        if (Paint.Join.MITER == mPaint.getStrokeJoin()) {
+            half *= Math.max(mPaint.getStrokeMiter(), 1f);
+        } else if (Paint.Cap.SQUARE == mPaint.getStrokeCap()) {
+            half *= (float) Math.sqrt(2);
+        }
+        return half + 1f;
+    }
+
+    /**
+     * 开始增量绘制一条路径。根据当前画笔同步分段画笔与图层画笔。
+     * <p>
+     * 增量绘制时各分段先以不透明、无混合模式的方式绘制到单独的图层上，
+     * 再使用 {@link #getLayerPaint()} 将图层合成到目标上。
+     * 分段相接处的重叠因此不会叠加透明度，抗锯齿的边缘也只会被绘制有限次。
+     * </p>
+     * <p>
+     * 混合模式在这里确定：除 SRC_OVER 以外的模式需要离屏合成，见 {@link #needsIsolation()} 。
+     * </p>
+     */
+    public void beginSections() {
+        mSectionPaint.set(mPaint);
+        mSectionPaint.setAlpha(255);
+        mSectionPaint.setXfermode(null);
+
+        Xfermode mode = mPaint.getXfermode();
+        mIsolated = null != mode && SRC_OVER != mode;
+        mLayerPaint.setAlpha(mPaint.getAlpha());
+        mLayerPaint.setXfermode(mIsolated ? mode : null);
+    }
+
+    /**
+     * 增量绘制的图层是否需要与缓存一起在离屏图层中合成。
+     * 混合模式不是 SRC_OVER 时（如橡皮擦）图层只能作用于缓存而不能作用于背景，此时返回 true 。
+     * 在 {@link #beginSections()} 中确定
+     *
+     * @return 是否需要离屏合成
+     */
+    public boolean needsIsolation() {
+        return mIsolated;
+    }
+
+    /**
+     * 增量绘制路径中 [from, to) 区间的分段。需要先调用 {@link #beginSections()} 。
+     * 默认逐段绘制路径，绘制方式与 {@link #drawTrack(Canvas, Track)} 不同的笔刷需要重写此方法。
+     *
+     * @param canvas 图层画布
+     * @param track  路径
+     * @param from   起始分段（含）
+     * @param to     结束分段（不含）
+     */
+    public void drawSections(Canvas canvas, Track track, int from, int to) {
+        for (int i = from; i < to; i++) {
+            track.getSection(i, mSectionPath);
+            canvas.drawPath(mSectionPath, mSectionPaint);
+        }
+    }
+
+    /**
+     * 绘制预测的路径尾部。尾部与分段一样以不透明的方式临时绘制在图层上，随图层一起合成，
+     * 与路径重叠的部分不会叠加透明度。需要先调用 {@link #beginSections()} 。
+     * 绘制方式与 {@link #drawTrack(Canvas, Track)} 不同的笔刷需要重写此方法。
+     *
+     * @param canvas 图层画布
+     * @param tail   预测的尾部
+     */
+    public void drawPrediction(Canvas canvas, Path tail) {
+        canvas.drawPath(tail, mSectionPaint);
+    }
+
+    /**
+     * 获取将增量绘制的图层合成到目标上时使用的画笔，包含笔刷的透明度与混合模式
+     *
+     * @return 图层画笔
+     */
+    public Paint getLayerPaint() {
+        return mLayerPaint;
+    }
+
     public abstract Drawable getIcon();
 
     public abstract CharSequence getName();
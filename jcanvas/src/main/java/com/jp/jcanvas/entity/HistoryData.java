@@ -1,27 +1,273 @@
 package com.jp.jcanvas.entity;
 
 import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.util.Log;
 
 import com.jp.jcanvas.brush.BaseBrush;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 /**
- *
+ * 历史记录。
+ * <p>
+ * 路径与分块可以写入外部存储并从内存中释放，之后需要时再从外部存储读回。
+ * 笔刷占用的内存很小，始终保留在内存中。
+ * </p>
  */
 public class HistoryData {
+
+    // 笔刷与对象本身占用内存的估算值
+    private static final long BASE_BYTES = 256L;
+
     private BaseBrush mBrush;
     private Track mTrack;
+    private TileDelta mDelta;
+    // 包围盒，包含笔刷宽度。释放路径后仍然保留
+    private final RectF mBounds;
+
+    // 外部存储中的位置
+    private Storage mStorage;
+    private long mOffset;
+    private int mLength;
 
     public HistoryData(BaseBrush brush, Track track) {
         this.mBrush = brush.cloneBrush();
         this.mTrack = new Track(track);
+        this.mBounds = new RectF();
+        track.computeSectionBounds(0, mBounds);
+        if (!mBounds.isEmpty()) {
+            float outset = brush.getBoundsOutset();
+            mBounds.inset(-outset, -outset);
+        }
     }
 
     public HistoryData(HistoryData data) {
-        this.mBrush = data.mBrush.cloneBrush();
-        this.mTrack = new Track(data.mTrack);
+        synchronized (data) {
+            data.ensureLoaded();
+            this.mBrush = data.mBrush.cloneBrush();
+            this.mTrack = new Track(data.mTrack);
+            this.mDelta = data.mDelta;
+            this.mBounds = new RectF(data.mBounds);
+        }
     }
 
-    public void draw(Canvas canvas) {
+    /**
+     * 绘制路径，需要时从外部存储读回
+     *
+     * @param canvas 画布
+     * @return 是否已绘制。无法从外部存储读回（文件已删除或读取失败）时返回 false
+     */
+    public synchronized boolean draw(Canvas canvas) {
+        if (!ensureLoaded()) {
+            return false;
+        }
         mBrush.drawTrack(canvas, mTrack);
+        return true;
+    }
+
+    /**
+     * 获取路径的包围盒（文档坐标系），包含笔刷宽度
+     *
+     * @param bounds 包围盒
+     */
+    public void getBounds(RectF bounds) {
+        bounds.set(mBounds);
+    }
+
+    /**
+     * 设置提交时记录的缓存分块
+     *
+     * @param delta 分块
+     */
+    public synchronized void setDelta(TileDelta delta) {
+        this.mDelta = delta;
+        // 内容变化，原先写入的记录不再可用
+        this.mStorage = null;
+    }
+
+    /**
+     * 获取提交时记录的缓存分块
+     *
+     * @return 分块，没有记录时为 null
+     */
+    public synchronized TileDelta getDelta() {
+        ensureLoaded();
+        return mDelta;
+    }
+
+    /**
+     * 估算当前占用的内存
+     *
+     * @return 字节数
+     */
+    public synchronized long getByteCount() {
+        long size = BASE_BYTES;
+        if (null != mTrack) {
+            size += mTrack.getByteCount();
+        }
+        if (null != mDelta) {
+            size += mDelta.getByteCount();
+        }
+        return size;
+    }
+
+    /**
+     * 获取路径的站点数量
+     *
+     * @return 站点数量，路径不在内存中时为 0
+     */
+    public synchronized int getStationCount() {
+        return null != mTrack ? mTrack.getStationCount() : 0;
+    }
+
+    /**
+     * 路径与分块是否在内存中
+     *
+     * @return 是否在内存中
+     */
+    public synchronized boolean isLoaded() {
+        return null != mTrack;
+    }
+
+    /**
+     * 是否已写入外部存储
+     *
+     * @return 是否已写入
+     */
+    public synchronized boolean isStored() {
+        return null != mStorage;
+    }
+
+    /**
+     * 将路径与分块序列化。分块会先被压缩
+     *
+     * @return 序列化的数据
+     * @throws IOException 序列化失败
+     */
+    public synchronized byte[] serialize() throws IOException {
+        if (!ensureLoaded()) {
+            throw new IOException("History data unavailable");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        mTrack.writeTo(out);
+        out.writeBoolean(null != mDelta);
+        if (null != mDelta) {
+            mDelta.writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 记录 {@link #serialize()} 的数据在外部存储中的位置
+     *
+     * @param storage 外部存储
+     * @param offset  起始位置
+     * @param length  长度
+     */
+    public synchronized void setStored(Storage storage, long offset, int length) {
+        this.mStorage = storage;
+        this.mOffset = offset;
+        this.mLength = length;
+    }
+
+    /**
+     * 获取已写入外部存储的数据长度
+     *
+     * @return 字节数，未写入时为 0
+     */
+    public synchronized int getStoredLength() {
+        return null == mStorage ? 0 : mLength;
+    }
+
+    /**
+     * 将已写入外部存储的数据复制到另一个外部存储，用于整理外部存储。
+     * 复制成功后才会改用新的位置，失败时原先的位置仍然可用
+     *
+     * @param storage 新的外部存储
+     * @return 是否已复制。未写入外部存储或已位于 storage 中时返回 false
+     * @throws IOException 读取或写入失败
+     */
+    public synchronized boolean relocate(Storage storage) throws IOException {
+        if (null == mStorage || storage == mStorage) {
+            return false;
+        }
+
+        byte[] buffer = new byte[mLength];
+        mStorage.read(mOffset, buffer);
+        mOffset = storage.append(buffer);
+        mStorage = storage;
+        return true;
+    }
+
+    /**
+     * 从内存中释放路径与分块。只有已写入外部存储时才会释放
+     *
+     * @return 是否已释放
+     */
+    public synchronized boolean unload() {
+        if (null == mStorage) {
+            return false;
+        }
+
+        mTrack = null;
+        mDelta = null;
+        return true;
+    }
+
+    /**
+     * 保证路径与分块在内存中，需要时从外部存储读回
+     *
+     * @return 是否可用
+     */
+    private boolean ensureLoaded() {
+        if (null != mTrack) {
+            return true;
+        }
+
+        try {
+            byte[] buffer = new byte[mLength];
+            mStorage.read(mOffset, buffer);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer));
+            Track track = Track.readFrom(in);
+            TileDelta delta = in.readBoolean() ? TileDelta.readFrom(in) : null;
+            mTrack = track;
+            mDelta = delta;
+            return true;
+
+        } catch (IOException e) {
+            Log.e(this.getClass().getSimpleName(), "load history failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * 历史记录的外部存储
+     */
+    public interface Storage {
+        /**
+         * 读取数据
+         *
+         * @param offset 起始位置
+         * @param buffer 读取的数据，读满为止
+         * @throws IOException 读取失败
+         */
+        void read(long offset, byte[] buffer) throws IOException;
+
+        /**
+         * 追加数据
+         *
+         * @param data 数据
+         * @return 数据的起始位置
+         * @throws IOException 写入失败
+         */
+        long append(byte[] data) throws IOException;
     }
 }
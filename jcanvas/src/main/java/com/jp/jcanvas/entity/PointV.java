@@ -6,6 +6,8 @@ package com.jp.jcanvas.entity;
 public class PointV {
     public float x;
     public float y;
+    // 事件发生的时间，单位为毫秒，与 MotionEvent#getEventTime() 相同。不参与比较
+    public long time;
     private Velocity v;
 
     public PointV() {
@@ -13,12 +15,17 @@ public class PointV {
     }
 
     public PointV(PointV src) {
-        this(src.x, src.y, src.v);
+        this(src.x, src.y, src.v, src.time);
     }
 
     public PointV(float x, float y, Velocity v) {
+        this(x, y, v, 0L);
+    }
+
+    public PointV(float x, float y, Velocity v, long time) {
         this.x = x;
         this.y = y;
+        this.time = time;
         this.v = new Velocity(v);
     }
 
@@ -33,13 +40,19 @@ public class PointV {
 
     public void set(float x, float y, Velocity v) {
         set(x, y);
-        this.v = new Velocity(v);
+        this.v.set(v);
+    }
+
+    public void set(float x, float y, Velocity v, long time) {
+        set(x, y, v);
+        this.time = time;
     }
 
     public void set(PointV p) {
         this.x = p.x;
         this.y = p.y;
-        this.v = new Velocity(p.v);
+        this.time = p.time;
+        this.v.set(p.v);
     }
 
     public final boolean equals(float x, float y) {
@@ -0,0 +1,389 @@
+package com.jp.jcanvas.entity;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 路径提交前后缓存中被修改的分块。
+ * <p>
+ * 缓存按 {@link #TILE_SIZE} 划分为固定大小的分块。提交路径前记录路径经过的分块的像素，
+ * 提交后再记录一次，前后完全相同的分块会被丢弃。撤销时写回提交前的分块，重做时写回提交后的分块，
+ * 耗时只与路径覆盖的面积有关，与撤销栈的长度无关。
+ * 分块的像素可以通过 {@link #compress()} 压缩，读取时自动解压。
+ * </p>
+ * <p>
+ * 记录分块在输入事件线程上持有画布的锁进行。未压缩分块的像素数组取自共享的缓冲池，
+ * 没有变化的分块与压缩后的分块立即归还，连续绘制时不再为每个分块分配新的数组。
+ * </p>
+ */
+public class TileDelta {
+
+    /**
+     * 分块边长
+     */
+    public static final int TILE_SIZE = 64;
+
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+
+    /**
+     * 缓冲池最多保留的像素数组数量，每个 16KB ，共 4MB
+     */
+    private static final int POOL_LIMIT = 256;
+
+    private static final ArrayDeque<int[]> sPool = new ArrayDeque<>();
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mColumns;
+
+    private final LinkedList<Tile> mTiles;
+    private boolean mCompressed;
+
+    private TileDelta(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        mTiles = new LinkedList<>();
+        mCompressed = false;
+    }
+
+    /**
+     * 在提交路径前记录路径经过的分块
+     *
+     * @param cache  缓存
+     * @param track  即将提交的路径
+     * @param outset 笔刷超出路径的距离
+     * @return 记录中的分块，绘制路径后需要调用 {@link #end(Bitmap)}
+     */
+    public static TileDelta begin(@NonNull Bitmap cache, @NonNull Track track, float outset) {
+        TileDelta delta = new TileDelta(cache.getWidth(), cache.getHeight());
+        BitSet marks = delta.markTiles(track, outset);
+
+        for (int i = marks.nextSetBit(0); i >= 0; i = marks.nextSetBit(i + 1)) {
+            Tile tile = new Tile(i);
+            tile.before = delta.readTile(cache, i);
+            delta.mTiles.add(tile);
+        }
+        return delta;
+    }
+
+    /**
+     * 在提交路径后记录分块，丢弃没有变化的分块
+     *
+     * @param cache 缓存
+     * @return 是否有分块发生变化
+     */
+    public synchronized boolean end(@NonNull Bitmap cache) {
+        Iterator<Tile> it = mTiles.iterator();
+        while (it.hasNext()) {
+            Tile tile = it.next();
+            int[] after = readTile(cache, tile.index);
+            if (Arrays.equals((int[]) tile.before, after)) {
+                recycle((int[]) tile.before);
+                recycle(after);
+                it.remove();
+            } else {
+                tile.after = after;
+            }
+        }
+        return !mTiles.isEmpty();
+    }
+
+    /**
+     * 分块是否可以用于当前的缓存。缓存尺寸变化后分块不再可用
+     *
+     * @param cache 缓存
+     * @return 是否可用
+     */
+    public boolean isValidFor(@NonNull Bitmap cache) {
+        return cache.getWidth() == mWidth && cache.getHeight() == mHeight;
+    }
+
+    /**
+     * 将缓存恢复到提交路径前的状态
+     *
+     * @param cache 缓存
+     */
+    public synchronized void restoreBefore(@NonNull Bitmap cache) {
+        for (Tile tile : mTiles) {
+            writeTile(cache, tile.index, pixelsOf(tile.before));
+        }
+    }
+
+    /**
+     * 将缓存恢复到提交路径后的状态
+     *
+     * @param cache 缓存
+     */
+    public synchronized void restoreAfter(@NonNull Bitmap cache) {
+        for (Tile tile : mTiles) {
+            writeTile(cache, tile.index, pixelsOf(tile.after));
+        }
+    }
+
+    /**
+     * 计算所有分块的包围盒
+     *
+     * @param bounds 包围盒
+     */
+    public synchronized void computeBounds(RectF bounds) {
+        bounds.setEmpty();
+        for (Tile tile : mTiles) {
+            int left = (tile.index % mColumns) * TILE_SIZE;
+            int top = (tile.index / mColumns) * TILE_SIZE;
+            bounds.union(left, top,
+                    Math.min(left + TILE_SIZE, mWidth), Math.min(top + TILE_SIZE, mHeight));
+        }
+    }
+
+    /**
+     * 压缩分块的像素。路径覆盖的分块中大部分像素通常是透明或相同的，压缩率很高。
+     * 耗时较长，应在后台线程调用。
+     */
+    public synchronized void compress() {
+        // 检查与压缩在同一个临界区内，重复调用不会压缩已压缩的数据
+        if (mCompressed) {
+            return;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            byte[] buffer = new byte[TILE_PIXELS * 4];
+            ByteBuffer bytes = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+            for (Tile tile : mTiles) {
+                int[] before = (int[]) tile.before;
+                int[] after = (int[]) tile.after;
+                tile.before = deflate(deflater, bytes, buffer, before);
+                tile.after = deflate(deflater, bytes, buffer, after);
+                recycle(before);
+                recycle(after);
+            }
+            mCompressed = true;
+
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 获取分块占用的内存
+     *
+     * @return 字节数
+     */
+    public synchronized long getByteCount() {
+        long size = 0L;
+        for (Tile tile : mTiles) {
+            size += sizeOf(tile.before) + sizeOf(tile.after);
+        }
+        return size;
+    }
+
+    /**
+     * 将分块写入输出流。写入前会先压缩
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        compress();
+
+        synchronized (this) {
+            out.writeInt(mWidth);
+            out.writeInt(mHeight);
+            out.writeInt(mTiles.size());
+            for (Tile tile : mTiles) {
+                out.writeInt(tile.index);
+                writePayload(out, (byte[]) tile.before);
+                writePayload(out, (byte[]) tile.after);
+            }
+        }
+    }
+
+    /**
+     * 从输入流读取 {@link #writeTo(DataOutput)} 写入的分块
+     *
+     * @param in 输入流
+     * @return 分块
+     * @throws IOException 读取失败
+     */
+    public static TileDelta readFrom(DataInput in) throws IOException {
+        TileDelta delta = new TileDelta(in.readInt(), in.readInt());
+        delta.mCompressed = true;
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Tile tile = new Tile(in.readInt());
+            tile.before = readPayload(in);
+            tile.after = readPayload(in);
+            delta.mTiles.add(tile);
+        }
+        return delta;
+    }
+
+    private static void writePayload(DataOutput out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    private static byte[] readPayload(DataInput in) throws IOException {
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * 根据路径标记经过的分块。
+     * 第 k 个分段位于站点 k - 1 到 k + 1 的包围盒内，逐段标记可以避免标记整条路径包围盒内的所有分块。
+     */
+    private BitSet markTiles(Track track, float outset) {
+        BitSet marks = new BitSet();
+        int count = track.getStationCount();
+        for (int i = 0; i < count; i++) {
+            float left = track.getX(i);
+            float top = track.getY(i);
+            float right = left;
+            float bottom = top;
+            for (int j = Math.max(0, i - 2); j < i; j++) {
+                left = Math.min(left, track.getX(j));
+                top = Math.min(top, track.getY(j));
+                right = Math.max(right, track.getX(j));
+                bottom = Math.max(bottom, track.getY(j));
+            }
+            markRect(marks, left - outset, top - outset, right + outset, bottom + outset);
+        }
+        return marks;
+    }
+
+    private void markRect(BitSet marks, float left, float top, float right, float bottom) {
+        int rows = (mHeight + TILE_SIZE - 1) / TILE_SIZE;
+        int c0 = Math.max(0, (int) Math.floor(left / TILE_SIZE));
+        int r0 = Math.max(0, (int) Math.floor(top / TILE_SIZE));
+        int c1 = Math.min(mColumns - 1, (int) Math.floor(right / TILE_SIZE));
+        int r1 = Math.min(rows - 1, (int) Math.floor(bottom / TILE_SIZE));
+        if (c0 > c1 || r0 > r1) {
+            // 完全位于缓存之外
+            return;
+        }
+
+        for (int r = r0; r <= r1; r++) {
+            marks.set(r * mColumns + c0, r * mColumns + c1 + 1);
+        }
+    }
+
+    private int[] readTile(Bitmap cache, int index) {
+        int left = (index % mColumns) * TILE_SIZE;
+        int top = (index / mColumns) * TILE_SIZE;
+        int width = Math.min(TILE_SIZE, mWidth - left);
+        int height = Math.min(TILE_SIZE, mHeight - top);
+        int[] pixels = obtain();
+        if (width < TILE_SIZE || height < TILE_SIZE) {
+            // 边缘的分块只写入一部分，其余部分清零，复用的数组才能直接比较
+            Arrays.fill(pixels, 0);
+        }
+        cache.getPixels(pixels, 0, TILE_SIZE, left, top, width, height);
+        return pixels;
+    }
+
+    private static int[] obtain() {
+        int[] pixels;
+        synchronized (sPool) {
+            pixels = sPool.pollLast();
+        }
+        return null != pixels ? pixels : new int[TILE_PIXELS];
+    }
+
+    private static void recycle(int[] pixels) {
+        synchronized (sPool) {
+            if (sPool.size() < POOL_LIMIT) {
+                sPool.addLast(pixels);
+            }
+        }
+    }
+
+    private void writeTile(Bitmap cache, int index, int[] pixels) {
+        int left = (index % mColumns) * TILE_SIZE;
+        int top = (index / mColumns) * TILE_SIZE;
+        cache.setPixels(pixels, 0, TILE_SIZE, left, top,
+                Math.min(TILE_SIZE, mWidth - left), Math.min(TILE_SIZE, mHeight - top));
+    }
+
+    private static byte[] deflate(Deflater deflater, ByteBuffer bytes, byte[] buffer, int[] pixels) {
+        bytes.clear();
+        bytes.asIntBuffer().put(pixels);
+
+        deflater.reset();
+        deflater.setInput(buffer);
+        deflater.finish();
+
+        byte[] out = new byte[buffer.length];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private static int[] pixelsOf(Object payload) {
+        if (payload instanceof int[]) {
+            return (int[]) payload;
+        }
+
+        byte[] buffer = new byte[TILE_PIXELS * 4];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput((byte[]) payload);
+            int length = 0;
+            while (length < buffer.length && !inflater.finished()) {
+                length += inflater.inflate(buffer, length, buffer.length - length);
+            }
+
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Broken tile payload", e);
+
+        } finally {
+            inflater.end();
+        }
+
+        int[] pixels = new int[TILE_PIXELS];
+        ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+        return pixels;
+    }
+
+    private static long sizeOf(Object payload) {
+        if (payload instanceof int[]) {
+            return 4L * ((int[]) payload).length;
+        }
+        return null == payload ? 0L : ((byte[]) payload).length;
+    }
+
+    /**
+     * 分块。像素未压缩时为 int[] ，压缩后为 byte[]
+     */
+    private static class Tile {
+        final int index;
+        Object before;
+        Object after;
+
+        Tile(int index) {
+            this.index = index;
+        }
+    }
+}
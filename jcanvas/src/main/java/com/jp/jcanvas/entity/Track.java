@@ -2,114 +2,144 @@ package com.jp.jcanvas.entity;
 
 import android.graphics.Matrix;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.jp.jcanvas.geometry.PointTransform;
+import com.jp.jcanvas.geometry.PolylineSimplifier;
+import com.jp.jcanvas.geometry.QuadSmoother;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 /**
- *
+ * 路径
+ * <p>
+ * 站点以紧凑的形式保存在可增长的 float 数组中：坐标与速率分别按 x, y 交错存放，
+ * 时间保存为相对于出发时间的毫秒数。每个站点只占用 20 字节，不再为每个站点创建对象。
+ * 分段与完整路径都可以由站点推导，只在需要时生成。
+ * 平滑、简化与坐标变换的计算由不依赖 Android 的 geometry 模块完成，这里只负责存储与生成 Path 。
+ * </p>
+ * <p>
+ * 一个线程通过 {@link #departure(PointV)} 与 {@link #addStation(PointV)} 追加站点的同时，
+ * 另一个线程可以不加锁地读取已发布的站点与分段：站点数量在站点写入之后才更新，
+ * 扩容时复制出的新数组也包含所有已发布的站点。其他修改操作与 {@link #getPath()} 需要外部同步。
+ * </p>
  */
 public class Track {
 
-    private LinkedList<PointV> mPoints;
-    private LinkedList<Path> mSections;
-    private Path mPath;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 站点坐标 x0, y0, x1, y1, ...
+    private volatile float[] mXY;
+    // 站点速率 vx0, vy0, vx1, vy1, ...
+    private volatile float[] mV;
+    // 站点时间，相对于 mStartTime 的毫秒数
+    private volatile float[] mTime;
+    // 已发布的站点数量。写入站点之后再更新
+    private volatile int mCount;
+    private long mStartTime;
 
-    private PointV mLastPoint;
-    private Point mLastControl;
+    // 完整路径，只在 getPath() 时增量生成。mPathSections 为已加入路径的分段数量
+    private Path mPath;
+    private int mPathSections;
 
     private boolean mStarted;
 
+    // 变换矩阵的值，只在追加站点的线程上使用
+    private float[] mMatrixValues;
+
     public Track() {
-        this.mPoints = new LinkedList<>();
-        this.mSections = new LinkedList<>();
+        this(INITIAL_CAPACITY);
+    }
+
+    private Track(int capacity) {
+        this.mXY = new float[2 * capacity];
+        this.mV = new float[2 * capacity];
+        this.mTime = new float[capacity];
+        this.mCount = 0;
+        this.mStartTime = 0L;
         this.mPath = new Path();
-        this.mLastPoint = new PointV();
-        this.mLastControl = new Point();
+        this.mPathSections = 0;
         this.mStarted = false;
     }
 
     public Track(@NonNull Track track) {
-        this.mPoints = new LinkedList<>(track.mPoints);
-        this.mSections = new LinkedList<>(track.mSections);
-        this.mPath = new Path(track.mPath);
-        this.mLastPoint = new PointV(track.mLastPoint);
-        this.mLastControl = new Point(track.mLastControl);
-        this.mStarted = track.mStarted;
+        this(Math.max(1, track.mCount));
+        copyStations(track);
     }
 
     public void set(@NonNull Track track) {
         if (this == track) {
             return;
         }
-        this.mPoints.clear();
-        this.mPoints.addAll(track.mPoints);
-        this.mSections.clear();
-        this.mSections.addAll(track.mSections);
-        this.mPath.set(track.mPath);
-        this.mLastPoint.set(track.mLastPoint);
-        this.mLastControl.set(track.mLastControl);
-        this.mStarted = track.mStarted;
+        ensureCapacity(track.mCount);
+        copyStations(track);
     }
 
     public void set(@NonNull LinkedList<PointV> points) {
-        this.mPoints.clear();
-        this.mPoints.addAll(points);
+        reset();
+        ensureCapacity(points.size());
+        for (PointV p : points) {
+            append(p);
+        }
         this.mStarted = !(0 == points.size());
-
-        generatePathViaPoints(mPoints);
     }
 
-    private void generatePathViaPoints(LinkedList<PointV> points) {
-        this.mSections.clear();
+    private void copyStations(Track track) {
+        System.arraycopy(track.mXY, 0, mXY, 0, 2 * track.mCount);
+        System.arraycopy(track.mV, 0, mV, 0, 2 * track.mCount);
+        System.arraycopy(track.mTime, 0, mTime, 0, track.mCount);
+        this.mCount = track.mCount;
+        this.mStartTime = track.mStartTime;
+        this.mStarted = track.mStarted;
         this.mPath.reset();
+        this.mPathSections = 0;
+    }
 
-        if (0 == points.size()) {
+    private void ensureCapacity(int count) {
+        if (count <= mTime.length) {
             return;
         }
 
-        // 根据 points 还原 sections 和 path
-        boolean firstNode = true;
-        Point lastP = new Point();
-        Point lastC = new Point();
-        float cX;
-        float cY;
-        for (PointV p : points) {
-            if (firstNode) {
-                mPath.moveTo(p.x, p.y);
-                cX = p.x;
-                cY = p.y;
-                firstNode = false;
-
-            } else {
-                // 贝塞尔曲线的控制点为起点和终点的中点
-                cX = (p.x + lastP.x) / 2f;
-                cY = (p.y + lastP.y) / 2f;
-                mPath.quadTo(lastP.x, lastP.y, cX, cY);
-
-                Path path = new Path();
-                path.moveTo(mLastControl.x, mLastControl.y);
-                path.quadTo(mLastPoint.x, mLastPoint.y, cX, cY);
-                mSections.add(path);
-            }
+        int capacity = Math.max(count, mTime.length + (mTime.length >> 1));
+        mXY = Arrays.copyOf(mXY, 2 * capacity);
+        mV = Arrays.copyOf(mV, 2 * capacity);
+        mTime = Arrays.copyOf(mTime, capacity);
+    }
 
-            lastP.set(p.x, p.y);
-            lastC.set(cX, cY);
+    private void append(PointV p) {
+        int count = mCount;
+        if (0 == count) {
+            mStartTime = p.time;
         }
+        ensureCapacity(count + 1);
+        float[] xy = mXY;
+        float[] v = mV;
+        xy[2 * count] = p.x;
+        xy[2 * count + 1] = p.y;
+        v[2 * count] = p.getVelocity().x;
+        v[2 * count + 1] = p.getVelocity().y;
+        mTime[count] = p.time - mStartTime;
+        // 发布新的站点
+        mCount = count + 1;
     }
 
     public void reset() {
-        this.mPoints.clear();
-        this.mSections.clear();
+        this.mCount = 0;
+        this.mStartTime = 0L;
         this.mPath.reset();
-        this.mLastPoint.set(0f, 0f, new Velocity());
-        this.mLastControl.set(0f, 0f);
+        this.mPathSections = 0;
         this.mStarted = false;
     }
 
     public boolean isEmpty() {
-        return !mStarted || (mPoints.size() <= 1);
+        return (mCount <= 1) || !mStarted;
     }
 
     public void departure(@NonNull PointV p) {
@@ -119,60 +149,361 @@ public class Track {
         }
 
         mStarted = true;
-        mPoints.add(p);
-        mPath.moveTo(p.x, p.y);
-        mLastPoint.set(p);
-        mLastControl.set(p.x, p.y);
+        append(p);
     }
 
     public void addStation(@NonNull PointV p) {
         if (!mStarted) {
             // 默认从 (0, 0) 开始
-            departure(new PointV(0f, 0f, new Velocity()));
+            departure(new PointV(0f, 0f, new Velocity(), p.time));
         }
 
-        mPoints.add(p);
-        float cX = (p.x + mLastPoint.x) / 2f;
-        float cY = (p.y + mLastPoint.y) / 2f;
+        append(p);
+    }
 
-        Path path = new Path();
-        path.moveTo(mLastControl.x, mLastControl.y);
-        path.quadTo(mLastPoint.x, mLastPoint.y, cX, cY);
-        mSections.add(path);
+    /**
+     * 追加 src 中从第 from 个站点开始的所有站点，坐标经过 matrix 变换。
+     * 所有站点写入后只发布一次，读取线程不会看到只追加了一部分的批次
+     *
+     * @param src    来源路径
+     * @param from   起始站点
+     * @param matrix 坐标变换，为 null 时不变换
+     */
+    public void addStations(@NonNull Track src, int from, @Nullable Matrix matrix) {
+        int count = src.getStationCount() - from;
+        if (count <= 0) {
+            return;
+        }
 
-        mPath.quadTo(mLastPoint.x, mLastPoint.y, cX, cY);
+        int start = mCount;
+        if (0 == start) {
+            mStartTime = src.getTime(from);
+        }
+        ensureCapacity(start + count);
+        float[] xy = mXY;
+        float[] time = mTime;
+        if (null != matrix) {
+            PointTransform.map(matrixValues(matrix), src.mXY, from, xy, start, count);
+        } else {
+            System.arraycopy(src.mXY, 2 * from, xy, 2 * start, 2 * count);
+        }
+        System.arraycopy(src.mV, 2 * from, mV, 2 * start, 2 * count);
+        for (int i = 0; i < count; i++) {
+            time[start + i] = src.getTime(from + i) - mStartTime;
+        }
 
-        mLastPoint.set(p);
-        mLastControl.set(cX, cY);
+        mStarted = true;
+        // 发布整个批次
+        mCount = start + count;
     }
 
-    public Track applyTransform(Matrix matrix) {
-        float[] pts = new float[2];
-        for (PointV p : mPoints) {
-            pts[0] = p.x;
-            pts[1] = p.y;
-            matrix.mapPoints(pts);
-            p.set(pts[0], pts[1]);
+    /**
+     * 简化路径，删除对形状影响很小的站点。首尾站点总是保留。
+     * 保证被删除的站点到简化后站点连成的折线的距离都不超过 tolerance 。
+     *
+     * @param tolerance 允许的最大偏差，为 0 时不简化
+     * @return 删除的站点数量
+     */
+    public int simplify(float tolerance) {
+        int count = mCount;
+        if (tolerance <= 0f || count <= 2) {
+            return 0;
         }
 
-        for (Path p : mSections) {
-            p.transform(matrix);
+        int[] keep = new int[count];
+        int kept = PolylineSimplifier.simplify(mXY, count, tolerance, keep);
+        if (kept == count) {
+            return 0;
         }
 
-        mPath.transform(matrix);
+        // 保留的序号为升序，可以原地压缩
+        float[] xy = mXY;
+        float[] v = mV;
+        float[] time = mTime;
+        for (int i = 0; i < kept; i++) {
+            int k = keep[i];
+            xy[2 * i] = xy[2 * k];
+            xy[2 * i + 1] = xy[2 * k + 1];
+            v[2 * i] = v[2 * k];
+            v[2 * i + 1] = v[2 * k + 1];
+            time[i] = time[k];
+        }
+        mCount = kept;
+        mPath.reset();
+        mPathSections = 0;
+        return count - kept;
+    }
+
+    /**
+     * 结束路径，使路径延伸到最后一个站点。
+     * <p>
+     * 每个分段都以相邻两个站点的中点为终点，追加站点的过程中路径只到达最后两个站点的中点，
+     * 最后半段要等到下一个站点才能确定。路径不再追加站点时，重复一次最后一个站点，
+     * 最后一个分段的控制点与终点都是最后一个站点，路径恰好终止于该站点。
+     * 已经结束的路径不会重复追加。
+     * </p>
+     */
+    public void arrive() {
+        int count = mCount;
+        if (!mStarted || count < 2) {
+            return;
+        }
+
+        int last = count - 1;
+        float[] xy = mXY;
+        if (xy[2 * last] == xy[2 * last - 2] && xy[2 * last + 1] == xy[2 * last - 1]) {
+            return;
+        }
 
+        ensureCapacity(count + 1);
+        xy = mXY;
+        float[] v = mV;
+        xy[2 * count] = xy[2 * last];
+        xy[2 * count + 1] = xy[2 * last + 1];
+        v[2 * count] = v[2 * last];
+        v[2 * count + 1] = v[2 * last + 1];
+        mTime[count] = mTime[last];
+        mCount = count + 1;
+    }
+
+    public Track applyTransform(Matrix matrix) {
+        PointTransform.map(matrixValues(matrix), mXY, 0, mXY, 0, mCount);
+        mPath.reset();
+        mPathSections = 0;
         return this;
     }
 
+    private float[] matrixValues(Matrix matrix) {
+        if (null == mMatrixValues) {
+            mMatrixValues = new float[9];
+        }
+        matrix.getValues(mMatrixValues);
+        return mMatrixValues;
+    }
+
+    /**
+     * 获取站点数量
+     *
+     * @return 站点数量
+     */
+    public int getStationCount() {
+        return mCount;
+    }
+
+    public float getX(int index) {
+        return mXY[2 * index];
+    }
+
+    public float getY(int index) {
+        return mXY[2 * index + 1];
+    }
+
+    public float getVelocityX(int index) {
+        return mV[2 * index];
+    }
+
+    public float getVelocityY(int index) {
+        return mV[2 * index + 1];
+    }
+
+    /**
+     * 获取站点的时间
+     *
+     * @param index 站点序号
+     * @return 时间，单位为毫秒
+     */
+    public long getTime(int index) {
+        return mStartTime + (long) mTime[index];
+    }
+
+    /**
+     * 获取第 index 个站点，结果写入 out
+     *
+     * @param index 站点序号
+     * @param out   输出的站点
+     */
+    public void getStation(int index, PointV out) {
+        out.set(getX(index), getY(index));
+        out.getVelocity().set(getVelocityX(index), getVelocityY(index));
+        out.time = getTime(index);
+    }
+
+    /**
+     * 获取分段数量
+     *
+     * @return 分段数量
+     */
+    public int getSectionCount() {
+        // 先读取已发布的站点数量，之后读取的其他字段都是发布时的值
+        int count = mCount;
+        return mStarted ? QuadSmoother.sectionCount(count) : 0;
+    }
+
+    /**
+     * 获取第 index 个分段，结果写入 out
+     * <p>
+     * 第 k 个分段以站点 k - 1 与 k 的中点为起点（第 0 个分段以站点 0 为起点）、
+     * 以站点 k 与 k + 1 的中点为终点、以站点 k 为控制点。
+     * </p>
+     *
+     * @param index 分段序号
+     * @param out   输出的路径
+     */
+    public void getSection(int index, Path out) {
+        float[] xy = mXY;
+        out.reset();
+        out.moveTo(QuadSmoother.startX(xy, index), QuadSmoother.startY(xy, index));
+        quadTo(out, xy, index);
+    }
+
+    // 贝塞尔曲线的控制点为站点，终点为站点与下一个站点的中点
+    private static void quadTo(Path path, float[] xy, int index) {
+        path.quadTo(QuadSmoother.controlX(xy, index), QuadSmoother.controlY(xy, index),
+                QuadSmoother.endX(xy, index), QuadSmoother.endY(xy, index));
+    }
+
+    /**
+     * 计算从第 from 个分段（含）到最后一个分段的包围盒，结果写入 bounds 。
+     * <p>
+     * 第 k 个分段是以 k 与 k + 1 两个站点的中点为终点、以站点 k 为控制点的二次贝塞尔曲线，
+     * 曲线总在其控制点构成的凸包之内，所以只需统计站点 k - 1 到 k + 1 的坐标即可，无需计算 Path 。
+     * 不包含笔刷宽度。
+     * </p>
+     *
+     * @param from   起始分段
+     * @param bounds 包围盒
+     */
+    public void computeSectionBounds(int from, RectF bounds) {
+        computeSectionBounds(from, getSectionCount(), bounds);
+    }
+
+    /**
+     * 计算 [from, to) 区间内分段的包围盒，结果写入 bounds 。不包含笔刷宽度
+     *
+     * @param from   起始分段（含）
+     * @param to     结束分段（不含）
+     * @param bounds 包围盒
+     */
+    public void computeSectionBounds(int from, int to, RectF bounds) {
+        bounds.setEmpty();
+        int start = QuadSmoother.hullFirst(from);
+        to = Math.min(to, getSectionCount());
+        if (from >= to) {
+            return;
+        }
+
+        float[] xy = mXY;
+        bounds.set(xy[2 * start], xy[2 * start + 1], xy[2 * start], xy[2 * start + 1]);
+        for (int i = start + 1; i <= to; i++) {
+            bounds.union(xy[2 * i], xy[2 * i + 1]);
+        }
+    }
+
+    /**
+     * 估算路径占用的内存，包括站点数组与已生成的路径
+     *
+     * @return 字节数
+     */
+    public long getByteCount() {
+        // 每个站点 5 个 float ，路径的每个分段约包括两个点与一个动词
+        return 20L * mTime.length + 20L * mPathSections + 64L;
+    }
+
+    /**
+     * 将站点写入输出流。分段与路径可以由站点还原，不需要写入
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int count = mStarted ? mCount : 0;
+        out.writeInt(count);
+        if (0 == count) {
+            return;
+        }
+
+        out.writeLong(mStartTime);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(mXY[2 * i]);
+            out.writeFloat(mXY[2 * i + 1]);
+            out.writeFloat(mV[2 * i]);
+            out.writeFloat(mV[2 * i + 1]);
+            out.writeFloat(mTime[i]);
+        }
+    }
+
+    /**
+     * 从输入流读取 {@link #writeTo(DataOutput)} 写入的路径
+     *
+     * @param in 输入流
+     * @return 路径
+     * @throws IOException 读取失败
+     */
+    public static Track readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        Track track = new Track(Math.max(1, count));
+        if (0 == count) {
+            return track;
+        }
+
+        track.mStartTime = in.readLong();
+        for (int i = 0; i < count; i++) {
+            track.mXY[2 * i] = in.readFloat();
+            track.mXY[2 * i + 1] = in.readFloat();
+            track.mV[2 * i] = in.readFloat();
+            track.mV[2 * i + 1] = in.readFloat();
+            track.mTime[i] = in.readFloat();
+        }
+        track.mCount = count;
+        track.mStarted = true;
+        return track;
+    }
+
+    /**
+     * 获取所有站点。每次调用都会创建新的站点对象，频繁访问时应使用 {@link #getX(int)} 等方法
+     *
+     * @return 站点列表
+     */
     public LinkedList<PointV> getStations() {
-        return mPoints;
+        LinkedList<PointV> points = new LinkedList<>();
+        for (int i = 0; i < mCount; i++) {
+            PointV p = new PointV();
+            getStation(i, p);
+            points.add(p);
+        }
+        return points;
     }
 
+    /**
+     * 获取所有分段。每次调用都会创建新的路径对象，频繁访问时应使用 {@link #getSection(int, Path)}
+     *
+     * @return 分段列表
+     */
     public LinkedList<Path> getSections() {
-        return mSections;
+        LinkedList<Path> sections = new LinkedList<>();
+        int count = getSectionCount();
+        for (int i = 0; i < count; i++) {
+            Path path = new Path();
+            getSection(i, path);
+            sections.add(path);
+        }
+        return sections;
     }
 
     public Path getPath() {
+        // 只将上次之后新增的分段加入路径
+        if (mStarted && mCount > 0) {
+            if (0 == mPathSections) {
+                mPath.reset();
+                mPath.moveTo(getX(0), getY(0));
+            }
+            float[] xy = mXY;
+            int count = getSectionCount();
+            for (int i = mPathSections; i < count; i++) {
+                quadTo(mPath, xy, i);
+            }
+            mPathSections = count;
+        }
         return new Path(mPath);
     }
 }